@@ -29,13 +29,12 @@ dependencies {
 
     implementation(platform(libs.okhttp.bom))
     implementation(libs.okhttp.core)
-    implementation("info.debatty:java-string-similarity:2.0.0")
     implementation(platform(libs.jackson.bom))
     implementation(libs.bundles.retrofit)
     implementation(platform(SpringBootPlugin.BOM_COORDINATES))
 
-    implementation("com.netflix.graphql.dgs:graphql-dgs-client:latest.release")
     implementation("org.springframework.boot:spring-boot-starter-webflux")
+    implementation("io.micrometer:micrometer-registry-prometheus")
     implementation("ch.qos.logback:logback-classic")
 
     testImplementation(platform(testLibs.junit.bom))
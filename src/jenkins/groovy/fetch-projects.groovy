@@ -8,8 +8,32 @@ import jenkins.model.Jenkins
 import java.time.Instant
 import java.time.temporal.ChronoUnit
 
+// ScriptListing replaces these to list pageSize projects at a time, those after the project the cursor names
+def pageSize = null
+def after = null
+
 def threshold = Instant.now().minus(24, ChronoUnit.HOURS)
-def projects = Jenkins.get().getAllItems(AbstractProject)
+def projects = Jenkins.get().getAllItems(AbstractProject).sort { it.fullName }
+def from = 0
+if (after) {
+    // binary search for the first project after the cursor, rather than filtering all of them on every page
+    def last = new String(Base64.decoder.decode(after), 'UTF-8')
+    def until = projects.size()
+    while (from < until) {
+        def mid = (from + until) >>> 1
+        if (projects[mid].fullName <= last) {
+            from = mid + 1
+        } else {
+            until = mid
+        }
+    }
+}
+def to = projects.size()
+if (pageSize && to - from > (pageSize as int)) {
+    to = from + (pageSize as int)
+    println('#next\t' + Base64.encoder.encodeToString(projects[to - 1].fullName.getBytes('UTF-8')))
+}
+projects = projects.subList(from, to)
 for (AbstractProject<AbstractProject, AbstractBuild> project : projects) {
 
     def buildTool = ""
@@ -17,17 +41,18 @@ for (AbstractProject<AbstractProject, AbstractBuild> project : projects) {
         if ("hudson.plugins.gradle.Gradle".equals(builder.getClass().getCanonicalName())) {
             buildTool = "gradle"
             break
-        } else if ("org.jfrog.hudson.maven3.Maven3Builder") {
+        } else if ("org.jfrog.hudson.maven3.Maven3Builder".equals(builder.getClass().getCanonicalName())) {
             buildTool = "maven"
             break
         }
     }
+    // newest first, so stop before lazy loading the records of builds we don't care about
     for (AbstractBuild build : project.builds) {
-        def status = (build.result != Result.FAILURE) ? "success" : "failure"
         def started = build.startTimeInMillis.with { Instant.ofEpochMilli(it) }
         if (started.isBefore(threshold)) {
-            continue
+            break
         }
+        def status = (build.result != Result.FAILURE) ? "success" : "failure"
         def jobName = project.fullName.replace(',', '&&&')
         def consoleTextUrl = build.absoluteUrl + 'consoleText'
         println([jobName, build.id, buildTool, status, consoleTextUrl].join("\t"))
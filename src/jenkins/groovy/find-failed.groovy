@@ -6,20 +6,48 @@ import jenkins.model.Jenkins
 import java.time.Instant
 import java.time.temporal.ChronoUnit
 
+// FetchFailed -Dincremental replaces this with 'true', so builds still running are listed and their logs followed
+def running = null
+
+// ScriptListing replaces these to list pageSize projects at a time, those after the project the cursor names
+def pageSize = null
+def after = null
+
 def threshold = Instant.now().minus(1, ChronoUnit.DAYS)
-def projects = Jenkins.get().getAllItems(AbstractProject)
+def projects = Jenkins.get().getAllItems(AbstractProject).sort { it.fullName }
+def from = 0
+if (after) {
+    // binary search for the first project after the cursor, rather than filtering all of them on every page
+    def last = new String(Base64.decoder.decode(after), 'UTF-8')
+    def until = projects.size()
+    while (from < until) {
+        def mid = (from + until) >>> 1
+        if (projects[mid].fullName <= last) {
+            from = mid + 1
+        } else {
+            until = mid
+        }
+    }
+}
+def to = projects.size()
+if (pageSize && to - from > (pageSize as int)) {
+    to = from + (pageSize as int)
+    println('#next\t' + Base64.encoder.encodeToString(projects[to - 1].fullName.getBytes('UTF-8')))
+}
+projects = projects.subList(from, to)
 for (AbstractProject<AbstractProject, AbstractBuild> project : projects) {
+    // newest first, so stop before lazy loading the records of builds we don't care about
     for (AbstractBuild build : project.builds) {
-        if (build.result != Result.FAILURE) {
-            continue
-        }
         def started = build.startTimeInMillis.with { Instant.ofEpochMilli(it) }
         if (started.isBefore(threshold)) {
+            break
+        }
+        if (build.result != Result.FAILURE && !(running && build.building)) {
             continue
         }
         def jobName = project.fullName.replace('/', '-').replace(',', '-')
         def consoleTextUrl = build.absoluteUrl + 'consoleText'
-        println([jobName, build.id, consoleTextUrl].join("\t"))
+        println([jobName, build.id, consoleTextUrl, build.logText.length(), build.building].join("\t"))
     }
 }
 
@@ -17,13 +17,26 @@ class BuildDateInfo {
     }
 }
 
+// IngestReport -Dincremental replaces this with the first day that still has to be counted
+def watermark = null
+def since = watermark == null ? Long.MIN_VALUE : LocalDate.parse(watermark).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli()
+def nextWatermark = LocalDate.now(ZoneId.systemDefault())
+
 def grouped = new HashMap<LocalDate, BuildDateInfo>()
 def projects = Jenkins.get().getAllItems(AbstractProject)
 for (AbstractProject<AbstractProject, AbstractBuild> project : projects) {
+    // newest first, so nothing older than the watermark is loaded
     for (AbstractBuild build : project.builds) {
+        if (build.startTimeInMillis < since) {
+            break
+        }
         def buildDate = build.startTimeInMillis.with {
             LocalDate.ofInstant(Instant.ofEpochMilli(it), ZoneId.systemDefault())
         }
+        // days with running builds have to be counted again once they finished
+        if (build.building && buildDate.isBefore(nextWatermark)) {
+            nextWatermark = buildDate
+        }
         def buildDateInfo = grouped.get(buildDate)
         if (buildDateInfo == null) {
             buildDateInfo = new BuildDateInfo(1, build.result == Result.FAILURE ? 1 : 0)
@@ -39,4 +52,7 @@ for (AbstractProject<AbstractProject, AbstractBuild> project : projects) {
 println("date, total, failed")
 for (def e : new TreeMap<LocalDate, BuildDateInfo>(grouped).entrySet()) {
     println("${e.key}, ${e.value.total}, ${e.value.failed}")
+}
+if (watermark != null) {
+    println("# watermark ${nextWatermark}")
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+import groovy.json.JsonSlurper
+import hudson.console.ConsoleNote
+import hudson.model.AbstractBuild
+import hudson.model.AbstractProject
+import hudson.model.Result
+import hudson.tasks.Builder
+
+import jenkins.model.Jenkins
+
+import java.time.Instant
+import java.time.temporal.ChronoUnit
+
+// MineConsoleLogs -DpushDown replaces these with the base64 encoded JSON line patterns of its miners and the base64
+// encoded status of the builds to mine
+def patterns = null
+def status = null
+
+def linePatterns = new JsonSlurper().parse(Base64.decoder.decode(patterns))
+status = new String(Base64.decoder.decode(status), 'UTF-8')
+def threshold = Instant.now().minus(24, ChronoUnit.HOURS)
+def projects = Jenkins.get().getAllItems(AbstractProject)
+for (AbstractProject<AbstractProject, AbstractBuild> project : projects) {
+
+    def buildTool = ""
+    for (Builder builder : project.builders) {
+        if ("hudson.plugins.gradle.Gradle".equals(builder.getClass().getCanonicalName())) {
+            buildTool = "gradle"
+            break
+        } else if ("org.jfrog.hudson.maven3.Maven3Builder".equals(builder.getClass().getCanonicalName())) {
+            buildTool = "maven"
+            break
+        }
+    }
+    for (AbstractBuild build : project.builds) {
+        def started = build.startTimeInMillis.with { Instant.ofEpochMilli(it) }
+        if (started.isBefore(threshold)) {
+            break
+        }
+        def buildStatus = (build.result != Result.FAILURE) ? "success" : "failure"
+        if (buildStatus != status) {
+            continue
+        }
+        def jobName = project.fullName.replace(',', '&&&')
+        def consoleTextUrl = build.absoluteUrl + 'consoleText'
+        // the same job summary fetch-projects.groovy prints, followed by the matching line
+        build.logReader.withReader { reader ->
+            reader.eachLine { String line ->
+                def text = ConsoleNote.removeNotes(line)
+                if (linePatterns.any { p -> p.prefix ? text.startsWith(p.literal) : text.contains(p.literal) }) {
+                    println([jobName, build.id, buildTool, status, consoleTextUrl, text].join("\t"))
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
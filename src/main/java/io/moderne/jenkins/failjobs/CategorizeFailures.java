@@ -1,6 +1,6 @@
 package io.moderne.jenkins.failjobs;
 
-import info.debatty.java.stringsimilarity.experimental.Sift4;
+import io.moderne.jenkins.failjobs.cluster.ExceptionClusterer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -54,16 +54,9 @@ public class CategorizeFailures {
 
     public Map<String, Integer> group(List<String> exceptions) {
         Map<String, Integer> counts = new HashMap<>();
-        Sift4 sift4 = new Sift4();
-        sift4.setMaxOffset(100);
+        ExceptionClusterer clusterer = new ExceptionClusterer(THRESHOLD);
         for (String exception : exceptions) {
-            Optional<String> found = counts.keySet().stream()
-                    .filter(exn -> {
-                        double dist = sift4.distance(exn, exception);
-                        return dist * 100 / exception.length() < THRESHOLD;
-                    })
-                    .findFirst();
-            counts.compute(found.orElse(exception), (key, old) -> Optional.ofNullable(old).orElse(0) + 1);
+            counts.compute(clusterer.assign(exception), (key, old) -> Optional.ofNullable(old).orElse(0) + 1);
         }
         return counts;
     }
@@ -1,28 +1,46 @@
 package io.moderne.jenkins.failjobs;
 
-import info.debatty.java.stringsimilarity.experimental.Sift4;
+import io.moderne.jenkins.failjobs.cluster.ClusterStore;
+import io.moderne.jenkins.failjobs.cluster.ExceptionClusterer;
+import io.moderne.jenkins.failjobs.cluster.FailureSimilarity;
+import io.moderne.jenkins.failjobs.cluster.FrameDictionary;
+import io.moderne.jenkins.failjobs.scan.LogScanner;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.FileSystemUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+@Slf4j
 @AllArgsConstructor
 public class CategorizeFailuresHtml {
 
     private static final int THRESHOLD = 20;
     private final Path jenkinsFailedJobLogsDir;
     private Path htmlOutDir;
+    private int extractParallelism;
+    private int maxInFlight;
+    private Path stateFile;
+    private LogScanner scanner;
+    private FailureSimilarity similarity;
+    private int reportChunkSize;
+    private final FrameDictionary frames = new FrameDictionary();
 
-    private static final String HTML_HEADER = """
+    static final String HTML_HEADER = """
             <!doctype html>
             <html lang="en">
               <head>
@@ -36,13 +54,29 @@ public class CategorizeFailuresHtml {
             """;
 
     public static void main(String[] args) {
-        new CategorizeFailuresHtml(
+        fromSystemProperties().run();
+    }
+
+    public static CategorizeFailuresHtml fromSystemProperties() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        boolean parallel = Boolean.getBoolean("parallel");
+        return new CategorizeFailuresHtml(
                 Paths.get("jenkins-failed"),
-                Paths.get("jenkins-failed-html")
-        ).run();
+                Paths.get("jenkins-failed-html"),
+                parallel ? Integer.getInteger("extractThreads", cores) : 1,
+                Integer.getInteger("maxInFlight", 2 * cores),
+                Boolean.getBoolean("incremental") ? Paths.get(System.getProperty("stateFile", "jenkins-failed-clusters.json")) : null,
+                System.getProperty("failurePatterns") == null ? LogScanner.defaults() : LogScanner.fromConfig(Paths.get(System.getProperty("failurePatterns"))),
+                FailureSimilarity.named(System.getProperty("similarity", "sift4"), Integer.getInteger("threshold", THRESHOLD)),
+                Boolean.getBoolean("paginated") ? Integer.getInteger("chunkSize", 500) : 0
+        );
     }
 
     public void run() {
+        write(stateFile == null ? group(extract()) : groupIncrementally());
+    }
+
+    public void write(Map<String, List<Path>> groups) {
         try {
             if (Files.exists(htmlOutDir)) {
                 FileSystemUtils.deleteRecursively(htmlOutDir);
@@ -51,12 +85,16 @@ public class CategorizeFailuresHtml {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (reportChunkSize > 0) {
+            new HtmlReport(htmlOutDir, reportChunkSize).write(groups);
+            return;
+        }
         try (PrintWriter indexWriter = new PrintWriter(Files.newOutputStream(htmlOutDir.resolve("index.html"), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
             indexWriter.write(HTML_HEADER);
             indexWriter.write("<body>\n");
             indexWriter.write("<table class=\"table\"><tr><th>Message</th><th>Count</th></tr>\n");
             AtomicInteger i = new AtomicInteger(0);
-            group(extract()).forEach((k, v) -> {
+            groups.forEach((k, v) -> {
                 int groupIndex = i.getAndIncrement();
                 try (PrintWriter groupWriter = new PrintWriter(Files.newOutputStream(htmlOutDir.resolve(groupIndex + ".html"), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
                     groupWriter.write(HTML_HEADER);
@@ -80,51 +118,78 @@ public class CategorizeFailuresHtml {
         }
     }
 
-    private record JobError(String exception, Path consoleLog) {
+    public List<JobError> extract() {
+        return extract(listLogs());
     }
 
-    public List<JobError> extract() {
-        List<JobError> exceptions = new ArrayList<>();
-        try (Stream<Path> files = Files.list(jenkinsFailedJobLogsDir).sorted()) {
-            files.forEach(f -> {
-                try (Stream<String> lines = Files.lines(f)) {
-                    exceptions.add(new JobError(lines
-                            .filter(l -> l.contains("Exception:") ||
-                                    l.contains("Error:") ||
-                                    l.contains("ERROR") ||
-                                    l.contains("An exception occurred") ||
-                                    l.startsWith("Extension with name") ||
-                                    l.startsWith("Could not find method mavenLocal()") ||
-                                    l.contains("Could not find com.fasterxml.jackson.datatype:jackson-datatype-jsr310:RELEASE") ||
-                                    l.contains("Could not resolve all files for configuration") ||
-                                    l.contains("Publication only contains dependencies and/or constraints without a version") ||
-                                    l.contains("Could not find method pluginManagement()") ||
-                                    l.contains("No signature of method: org.gradle.api.internal.tasks.RealizableTaskCollection.configureEach() is applicable for argument types") ||
-                                    l.contains("Publishing is not able to resolve a dependency on a project with multiple publications that have different coordinates.") ||
-                                    l.startsWith("\tat"))
-                            .collect(Collectors.joining("\n")), f));
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-            return exceptions;
+    public List<JobError> extract(List<Path> consoleLogs) {
+        if (extractParallelism > 1) {
+            return extractInParallel(consoleLogs);
+        }
+        List<JobError> exceptions = new ArrayList<>(consoleLogs.size());
+        consoleLogs.forEach(f -> exceptions.add(extract(f)));
+        return exceptions;
+    }
+
+    private List<Path> listLogs() {
+        try (Stream<Path> files = Files.list(jenkinsFailedJobLogsDir)) {
+            return files.sorted().collect(Collectors.toList());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Extracts on a work-stealing pool. At most {@code maxInFlight} logs are being read at once, and results keep
+     * the sorted path order regardless of which worker finishes first.
+     */
+    private List<JobError> extractInParallel(List<Path> files) {
+        JobError[] exceptions = new JobError[files.size()];
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ForkJoinPool pool = new ForkJoinPool(extractParallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                int index = i;
+                inFlight.acquire();
+                tasks.add(pool.submit(() -> {
+                    try {
+                        exceptions[index] = extract(files.get(index));
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            tasks.forEach(ForkJoinTask::join);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return Arrays.asList(exceptions);
+    }
+
+    private JobError extract(Path consoleLog) {
+        IntStream.Builder exception = IntStream.builder();
+        scanner.scan(consoleLog, line -> exception.add(frames.id(line)));
+        return new JobError(exception.build().toArray(), consoleLog);
+    }
+
+    /**
+     * Extracts from a console log while it is being read, e.g. while it is being downloaded.
+     */
+    public JobError extract(InputStream log, Path consoleLog) throws IOException {
+        IntStream.Builder exception = IntStream.builder();
+        scanner.scan(log, line -> exception.add(frames.id(line)));
+        return new JobError(exception.build().toArray(), consoleLog);
+    }
+
     public Map<String, List<Path>> group(List<JobError> jobErrors) {
         Map<String, List<Path>> groups = new HashMap<>();
-        Sift4 sift4 = new Sift4();
-        sift4.setMaxOffset(100);
+        ExceptionClusterer clusterer = new ExceptionClusterer(similarity, frames);
         for (JobError jobError : jobErrors) {
-            Optional<String> found = groups.keySet().stream()
-                    .filter(exn -> {
-                        double dist = sift4.distance(exn, jobError.exception());
-                        return dist * 100 / jobError.exception().length() < THRESHOLD;
-                    })
-                    .findFirst();
-            List<Path> paths = groups.computeIfAbsent(found.orElse(jobError.exception()), k -> new ArrayList<>());
+            List<Path> paths = groups.computeIfAbsent(clusterer.representative(clusterer.assign(jobError.frames())), k -> new ArrayList<>());
             paths.add(jobError.consoleLog());
         }
         List<Map.Entry<String, List<Path>>> list = new ArrayList<>(groups.entrySet());
@@ -135,4 +200,21 @@ public class CategorizeFailuresHtml {
         }
         return map;
     }
+
+    /**
+     * Only logs that are not already a member of a cluster in {@link #stateFile} are extracted and assigned.
+     */
+    private Map<String, List<Path>> groupIncrementally() {
+        ClusterStore store = ClusterStore.load(stateFile, jenkinsFailedJobLogsDir);
+        ExceptionClusterer clusterer = store.restore(similarity, frames);
+        List<Path> newLogs = listLogs().stream()
+                .filter(f -> !store.contains(f.getFileName().toString()))
+                .collect(Collectors.toList());
+        log.info("Assigning {} new console log(s)", newLogs.size());
+        for (JobError jobError : extract(newLogs)) {
+            store.add(clusterer.representative(clusterer.assign(jobError.frames())), jobError.consoleLog().getFileName().toString());
+        }
+        store.save(clusterer);
+        return store.groups();
+    }
 }
@@ -2,22 +2,35 @@ package io.moderne.jenkins.failjobs;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.moderne.jenkins.failjobs.fetch.BodyProcessor;
+import io.moderne.jenkins.failjobs.fetch.ConsoleLogDownloader;
+import io.moderne.jenkins.failjobs.fetch.ConsoleLogTail;
+import io.moderne.jenkins.failjobs.fetch.DownloadReport;
+import io.moderne.jenkins.failjobs.fetch.DownloadSettings;
+import io.moderne.jenkins.failjobs.fetch.FetchManifest;
+import io.moderne.jenkins.failjobs.fetch.ScriptListing;
+import io.moderne.jenkins.util.FetchMetrics;
+import io.moderne.jenkins.util.HttpCacheSettings;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
-import org.jetbrains.annotations.NotNull;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Scanner;
-import java.util.concurrent.CountDownLatch;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -26,6 +39,11 @@ public class FetchFailed {
     private final Path outputDir;
     private final HttpUrl url;
     private final Path script;
+    private final FetchManifest manifest;
+    private final CategorizeFailuresHtml categorizer;
+    private final boolean saveLogs;
+    private final ConsoleLogTail tail;
+    private final int projectsPerPage;
 
     public static void main(String[] args) {
         String base = System.getProperty("url", "https://jenkins.moderne.ninja");
@@ -33,16 +51,40 @@ public class FetchFailed {
         Path out = Paths.get(System.getProperty("outDir", "jenkins-failed"));
         Path groovyScript = Paths.get("src/jenkins/groovy/find-failed.groovy");
 
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
                 .connectTimeout(1, TimeUnit.MINUTES)
                 .callTimeout(2, TimeUnit.MINUTES)
                 .readTimeout(5, TimeUnit.MINUTES)
-                .build();
-        new FetchFailed(okHttpClient, out, url, groovyScript).run(args);
+                .addNetworkInterceptor(FetchMetrics.global().okHttpInterceptor());
+        HttpCacheSettings cache = HttpCacheSettings.fromSystemProperties();
+        if (cache != null) {
+            // console logs of finished builds don't change
+            cache.apply(clientBuilder, Map.of(".*/consoleText", Duration.ofDays(1)));
+        }
+        OkHttpClient okHttpClient = clientBuilder.build();
+        FetchManifest manifest = Boolean.getBoolean("incremental")
+                ? FetchManifest.load(Paths.get(System.getProperty("manifest", "jenkins-failed-manifest.json")))
+                : null;
+        CategorizeFailuresHtml categorizer = Boolean.getBoolean("categorize") ? CategorizeFailuresHtml.fromSystemProperties() : null;
+        if (manifest != null && categorizer != null) {
+            throw new IllegalArgumentException("-Dcategorize needs whole console logs and can't be combined with -Dincremental");
+        }
+        boolean saveLogs = Boolean.parseBoolean(System.getProperty("saveLogs", "true"));
+        long tailBytes = Long.getLong("tail", 0);
+        if (manifest != null && tailBytes > 0) {
+            throw new IllegalArgumentException("-Dtail only fetches the end of console logs and can't be combined with -Dincremental");
+        }
+        ConsoleLogTail tail = tailBytes > 0 ? new ConsoleLogTail(okHttpClient, tailBytes, Long.getLong("tailMax", 16 * tailBytes)) : null;
+        try {
+            new FetchFailed(okHttpClient, out, url, groovyScript, manifest, categorizer, saveLogs, tail,
+                    Integer.getInteger("projectsPerPage", 500)).run(args);
+        } finally {
+            FetchMetrics.writeFromSystemProperties();
+        }
     }
 
     private String getCrumb(OkHttpClient client, String credential) {
-        Request request = new Request.Builder().get().url("https://jenkins.moderne.ninja/crumbIssuer/api/json")
+        Request request = new Request.Builder().get().url(url.resolve("crumbIssuer/api/json"))
                 .header("Authorization", credential).build();
         try (Response response = client.newCall(request).execute()) {
             if (!response.isSuccessful()) {
@@ -61,78 +103,195 @@ public class FetchFailed {
         try {
             Files.createDirectories(outputDir);
             String scriptText = String.join("\n", Files.readAllLines(script));
+            if (manifest != null) {
+                // their logs are picked up where this run stops, until the build is complete or no longer listed
+                scriptText = ScriptListing.withVariable(script, scriptText, "running", "true");
+            }
             String basicCredential = Credentials.basic("greg@moderne.io", "11f8c789ae3574b09a6bfbbdfb157900e4");
             String crumb = getCrumb(client, basicCredential);
-            Call call = client.newCall(new Request.Builder()
-                    .post(new FormBody.Builder()
-                            .add("script", scriptText)
-                            .build())
-                    .url(url)
-                            .header("Authorization", basicCredential)
-                            .header("Jenkins-Crumb", crumb)
-                    .build());
-            List<Failed> failed = new LinkedList<>();
-            try (Response response = call.execute()) {
-                ResponseBody body = response.body();
-                assert body != null;
-                Scanner scanner = new Scanner(body.byteStream());
-                while (scanner.hasNextLine()) {
-                    String[] parts = scanner.nextLine().split("\t");
-                    String jobName = parts[0];
-                    String buildNumber = parts[1];
-                    String consoleTextUrl = parts[2];
-                    failed.add(new Failed(jobName, buildNumber, consoleTextUrl));
-                }
-            }
-            log.info("Queuing up fetches for {} failed build(s) to store in {}", failed.size(), outputDir);
-            CountDownLatch latch = new CountDownLatch(failed.size());
-            for (Failed f : failed) {
-                Request r = new Request.Builder()
-                        .get()
-                        .url(f.getConsoleTextUrl())
-                        .header("Authorization", basicCredential)
-                        .header("Jenkins-Crumb", crumb)
-                        .build();
-                client.newCall(r).enqueue(new Callback() {
-                    @Override
-                    public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                        log.warn("Failed to call {}", call.request().url(), e);
-                        latch.countDown();
+            ScriptListing listing = new ScriptListing(client, url,
+                    Headers.of("Authorization", basicCredential, "Jenkins-Crumb", crumb), script, scriptText, projectsPerPage);
+            DownloadReport<Failed> report;
+            int found;
+            AtomicInteger skipped = new AtomicInteger();
+            List<JobError> jobErrors = Collections.synchronizedList(new ArrayList<>());
+            Set<String> running = ConcurrentHashMap.newKeySet();
+            try (ConsoleLogDownloader<Failed> downloader = new ConsoleLogDownloader<>(client, DownloadSettings.fromSystemProperties())) {
+                // each page's builds start downloading while the next page is listed
+                found = listing.forEachLine(line -> {
+                    String[] parts = line.split("\t");
+                    long logLength = parts.length > 3 ? Long.parseLong(parts[3]) : -1;
+                    Failed f = new Failed(parts[0], parts[1], parts[2], logLength, parts.length > 4 && Boolean.parseBoolean(parts[4]));
+                    if (f.isBuilding()) {
+                        running.add(f.fileName());
                     }
-
-                    @Override
-                    public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
-                        try (ResponseBody body = response.body()) {
-                            if (!response.isSuccessful()) {
-                                log.warn("Received {} from {}", response.code(), call.request().url());
-                            } else if (body == null) {
-                                log.warn("Received null body from {}", call.request().url());
-                            } else {
-                                Files.copy(body.byteStream(), outputDir.resolve(String.join(".", f.getJobName(), f.getBuildNumber(), "txt")), StandardCopyOption.REPLACE_EXISTING);
-                            }
-                        } catch (IOException e) {
-                            log.warn("IOException fetching console text {}", call.request().url(), e);
-                        } finally {
-                            latch.countDown();
-                        }
+                    if (!submit(downloader, f, basicCredential, crumb, jobErrors)) {
+                        skipped.incrementAndGet();
                     }
                 });
+                log.info("Queued up fetches for {} failed build(s) to store in {}", found, outputDir);
+                report = downloader.await(Duration.ofMinutes(10));
+                if (manifest != null) {
+                    dropUnlisted(running);
+                }
+            } finally {
+                if (manifest != null) {
+                    manifest.save();
+                }
+            }
+            if (skipped.get() > 0) {
+                log.info("Skipped {} console log(s) that were already fetched completely", skipped);
             }
-            boolean completed = latch.await(10, TimeUnit.MINUTES);
-            if (completed) {
+            if (report.isComplete()) {
                 log.info("Fetching output complete");
             } else {
-                log.warn("Timeout expired while fetching output");
+                log.warn("Fetched {} of {} console logs", report.succeeded().size(), found - skipped.get());
+            }
+            if (categorizer != null) {
+                jobErrors.sort(Comparator.comparing(JobError::consoleLog));
+                categorizer.write(categorizer.group(jobErrors));
             }
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Logs of builds that are still running are kept next to the output directory rather than in it, so they aren't
+     * categorized as failures before they have failed.
+     */
+    private Path runningDir() {
+        return outputDir.resolveSibling(outputDir.getFileName() + ".running");
+    }
+
+    /**
+     * Deletes the partial logs of builds that were running on an earlier run but aren't listed anymore, because they
+     * didn't fail.
+     */
+    private void dropUnlisted(Set<String> running) throws IOException {
+        if (!Files.isDirectory(runningDir())) {
+            return;
+        }
+        List<Path> unlisted;
+        try (Stream<Path> files = Files.list(runningDir())) {
+            unlisted = files.filter(file -> !running.contains(file.getFileName().toString())).toList();
+        }
+        for (Path file : unlisted) {
+            // job names may contain dots, build numbers don't
+            String name = file.getFileName().toString().replaceFirst("\\.txt$", "");
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                manifest.forget(name.substring(0, dot), name.substring(dot + 1));
+            }
+            Files.delete(file);
+        }
+        if (!unlisted.isEmpty()) {
+            log.info("Dropped {} partial console log(s) of builds that didn't fail", unlisted.size());
+        }
+    }
+
+    /**
+     * @return false if the console log was already fetched completely.
+     */
+    private boolean submit(ConsoleLogDownloader<Failed> downloader, Failed f, String basicCredential, String crumb, List<JobError> jobErrors) {
+        Path consoleLog = outputDir.resolve(f.fileName());
+        if (manifest == null) {
+            Request r = new Request.Builder()
+                    .get()
+                    .url(f.getConsoleTextUrl())
+                    .header("Authorization", basicCredential)
+                    .header("Jenkins-Crumb", crumb)
+                    .build();
+            if (tail != null && f.getLogLength() >= 0) {
+                downloader.submit(f, tail.request(r, f.getLogLength()), tail.then(r, f.getLogLength(), consoleTextProcessor(consoleLog, jobErrors)));
+            } else {
+                downloader.submit(f, r, consoleTextProcessor(consoleLog, jobErrors));
+            }
+            return true;
+        }
+        Path partial = runningDir().resolve(f.fileName());
+        try {
+            if (f.isBuilding()) {
+                Files.createDirectories(partial.getParent());
+                consoleLog = partial;
+            } else if (Files.exists(partial)) {
+                // the build has failed, the rest of its log is appended where it is categorized
+                Files.move(partial, consoleLog, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        FetchManifest.Entry from = manifest.resumeFrom(f.getJobName(), f.getBuildNumber(), consoleLog);
+        if (from.complete()) {
+            return false;
+        }
+        Request r = new Request.Builder()
+                .get()
+                .url(FetchManifest.progressiveTextUrl(f.getConsoleTextUrl(), from))
+                .header("Authorization", basicCredential)
+                .header("Jenkins-Crumb", crumb)
+                .build();
+        downloader.submit(f, r, manifest.appendTo(f.getJobName(), f.getBuildNumber(), consoleLog, from));
+        return true;
+    }
+
+    /**
+     * Writes the console log to disk, or with {@code -Dcategorize} extracts its exception as it is downloaded and only
+     * keeps a copy if {@code -DsaveLogs} isn't false.
+     */
+    private BodyProcessor consoleTextProcessor(Path consoleLog, List<JobError> jobErrors) {
+        if (categorizer == null) {
+            return (body, headers) -> Files.copy(body.byteStream(), consoleLog, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return (body, headers) -> {
+            if (saveLogs) {
+                try (OutputStream copy = Files.newOutputStream(consoleLog);
+                     InputStream in = new TeeInputStream(body.byteStream(), copy)) {
+                    jobErrors.add(categorizer.extract(in, consoleLog));
+                }
+            } else {
+                jobErrors.add(categorizer.extract(body.byteStream(), consoleLog));
+            }
+        };
+    }
+
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        private TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                copy.write(b, off, read);
+            }
+            return read;
+        }
+    }
+
     @Data
     private static class Failed {
         private final String jobName;
         private final String buildNumber;
         private final String consoleTextUrl;
+        private final long logLength;
+        private final boolean building;
+
+        String fileName() {
+            return String.join(".", jobName, buildNumber, "txt");
+        }
     }
 }
@@ -0,0 +1,122 @@
+package io.moderne.jenkins.failjobs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.springframework.web.util.HtmlUtils.htmlEscape;
+
+/**
+ * Writes group pages in parallel, each split into chunks of {@code chunkSize} member logs, and an index that pages
+ * through a compact {@code clusters.js} data file of {@code [groupIndex, count, message]} rows. The data is a JSON
+ * array assigned to a variable so that index.html still works when opened from disk, where fetch() is not allowed.
+ */
+@RequiredArgsConstructor
+public class HtmlReport {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path htmlOutDir;
+    private final int chunkSize;
+
+    private static final String INDEX = CategorizeFailuresHtml.HTML_HEADER + """
+            <body>
+            <div class="container-fluid">
+              <input id="filter" class="form-control my-2" placeholder="Filter messages">
+              <table class="table"><thead><tr><th>Message</th><th>Count</th></tr></thead><tbody id="rows"></tbody></table>
+              <nav><button id="prev" class="btn btn-link">Previous</button><span id="page"></span><button id="next" class="btn btn-link">Next</button></nav>
+            </div>
+            <script src="clusters.js"></script>
+            <script>
+              const pageSize = 100;
+              let page = 0;
+              let shown = CLUSTERS;
+              function render() {
+                const rows = document.getElementById('rows');
+                rows.replaceChildren();
+                for (const [group, count, message] of shown.slice(page * pageSize, (page + 1) * pageSize)) {
+                  const tr = rows.insertRow();
+                  const a = document.createElement('a');
+                  a.href = group + '.html';
+                  a.textContent = message;
+                  tr.insertCell().appendChild(a);
+                  tr.insertCell().textContent = count;
+                }
+                const pages = Math.max(1, Math.ceil(shown.length / pageSize));
+                document.getElementById('page').textContent = 'Page ' + (page + 1) + ' of ' + pages + ' (' + shown.length + ' groups)';
+                document.getElementById('prev').disabled = page === 0;
+                document.getElementById('next').disabled = page + 1 >= pages;
+              }
+              document.getElementById('prev').onclick = () => { page--; render(); };
+              document.getElementById('next').onclick = () => { page++; render(); };
+              document.getElementById('filter').oninput = e => {
+                const text = e.target.value.toLowerCase();
+                shown = CLUSTERS.filter(c => c[2].toLowerCase().includes(text));
+                page = 0;
+                render();
+              };
+              render();
+            </script>
+            </body></html>
+            """;
+
+    public void write(Map<String, List<Path>> groups) {
+        List<Map.Entry<String, List<Path>>> clusters = new ArrayList<>(groups.entrySet());
+        IntStream.range(0, clusters.size()).parallel().forEach(i -> writeGroup(i, clusters.get(i).getKey(), clusters.get(i).getValue()));
+
+        List<Object[]> rows = new ArrayList<>(clusters.size());
+        for (int i = 0; i < clusters.size(); i++) {
+            String exceptionMessage = clusters.get(i).getKey().split("\n")[0];
+            if (exceptionMessage.isBlank()) {
+                exceptionMessage = "NO EXCEPTION";
+            }
+            rows.add(new Object[]{i, clusters.get(i).getValue().size(), exceptionMessage});
+        }
+        try {
+            Files.writeString(htmlOutDir.resolve("clusters.js"), "const CLUSTERS = " + MAPPER.writeValueAsString(rows) + ";\n");
+            Files.writeString(htmlOutDir.resolve("index.html"), INDEX);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeGroup(int groupIndex, String exception, List<Path> consoleLogs) {
+        int chunks = Math.max(1, (consoleLogs.size() + chunkSize - 1) / chunkSize);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = chunk * chunkSize;
+            int to = Math.min(consoleLogs.size(), from + chunkSize);
+            try (BufferedWriter groupWriter = Files.newBufferedWriter(htmlOutDir.resolve(chunkFile(groupIndex, chunk)))) {
+                groupWriter.write(CategorizeFailuresHtml.HTML_HEADER);
+                groupWriter.write("<body><div class=\"container-fluid\"><p><a href=\"index.html\">All groups</a></p>");
+                groupWriter.write("<pre>" + htmlEscape(exception) + "</pre>");
+                groupWriter.write("<p>" + (from + 1) + " - " + to + " of " + consoleLogs.size() + "</p><ul>");
+                for (Path consoleLogPath : consoleLogs.subList(from, to)) {
+                    String name = htmlEscape(consoleLogPath.getFileName().toString());
+                    groupWriter.write("<li><a href=\"../jenkins-failed/" + name + "\">" + name + "</a></li>");
+                }
+                groupWriter.write("</ul><nav>");
+                if (chunk > 0) {
+                    groupWriter.write("<a class=\"mr-3\" href=\"" + chunkFile(groupIndex, chunk - 1) + "\">Previous</a>");
+                }
+                if (chunk + 1 < chunks) {
+                    groupWriter.write("<a href=\"" + chunkFile(groupIndex, chunk + 1) + "\">Next</a>");
+                }
+                groupWriter.write("</nav></div></body></html>");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static String chunkFile(int groupIndex, int chunk) {
+        return chunk == 0 ? groupIndex + ".html" : groupIndex + "-" + chunk + ".html";
+    }
+}
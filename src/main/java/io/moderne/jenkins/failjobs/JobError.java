@@ -0,0 +1,9 @@
+package io.moderne.jenkins.failjobs;
+
+import java.nio.file.Path;
+
+/**
+ * @param frames the exception lines of the log as IDs from a {@link io.moderne.jenkins.failjobs.cluster.FrameDictionary}.
+ */
+public record JobError(int[] frames, Path consoleLog) {
+}
@@ -0,0 +1,209 @@
+package io.moderne.jenkins.failjobs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.moderne.jenkins.failjobs.fetch.ConsoleLogDownloader;
+import io.moderne.jenkins.failjobs.fetch.DownloadReport;
+import io.moderne.jenkins.failjobs.fetch.DownloadSettings;
+import io.moderne.jenkins.failjobs.fetch.ScriptListing;
+import io.moderne.jenkins.failjobs.mine.JobSummary;
+import io.moderne.jenkins.failjobs.mine.LogMiner;
+import io.moderne.jenkins.failjobs.scan.LinePattern;
+import io.moderne.jenkins.failjobs.scan.LogScanner;
+import io.moderne.jenkins.util.FetchMetrics;
+import io.moderne.jenkins.util.HttpCacheSettings;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the console log of every matching build once and feeds it to all registered {@link LogMiner}s in a
+ * single pass, picking the lines any miner is interested in with one {@link LogScanner}. When pushing down, the
+ * controller matches the lines itself and only they are sent back.
+ */
+@Slf4j
+public class MineConsoleLogs {
+    private final OkHttpClient client;
+    private final HttpUrl url;
+    private final Path script;
+    private final String status;
+    private final List<LogMiner> miners;
+    private final boolean pushDown;
+    private final int projectsPerPage;
+    private final List<LinePattern> patterns = new ArrayList<>();
+    private final LogScanner scanner;
+
+    public MineConsoleLogs(OkHttpClient client, HttpUrl url, Path script, String status, List<LogMiner> miners, boolean pushDown, int projectsPerPage) {
+        this.client = client;
+        this.url = url;
+        this.script = script;
+        this.status = status;
+        this.miners = miners;
+        this.pushDown = pushDown;
+        this.projectsPerPage = projectsPerPage;
+        miners.forEach(miner -> patterns.addAll(miner.patterns()));
+        this.scanner = new LogScanner(patterns);
+    }
+
+    public static void main(String[] args) {
+        List<LogMiner> miners = new ArrayList<>();
+        for (String name : System.getProperty("miners", "http-blocker,maven-mirrors").split(",")) {
+            miners.add(LogMiner.named(name.trim()));
+        }
+        try {
+            fromSystemProperties(miners).run();
+        } finally {
+            FetchMetrics.writeFromSystemProperties();
+        }
+    }
+
+    public static MineConsoleLogs fromSystemProperties(List<LogMiner> miners) {
+        String base = System.getProperty("url", "https://jenkins.moderne.ninja");
+        HttpUrl url = base.endsWith("/") ? HttpUrl.get(base + "scriptText") : HttpUrl.get(base + "/scriptText");
+        boolean pushDown = Boolean.getBoolean("pushDown");
+        Path groovyScript = Paths.get(pushDown ? "src/jenkins/groovy/mine-logs.groovy" : "src/jenkins/groovy/fetch-projects.groovy");
+
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder().readTimeout(1, TimeUnit.MINUTES).connectTimeout(1, TimeUnit.MINUTES).callTimeout(1, TimeUnit.MINUTES)
+                .addNetworkInterceptor(FetchMetrics.global().okHttpInterceptor());
+        HttpCacheSettings cache = HttpCacheSettings.fromSystemProperties();
+        if (cache != null) {
+            cache.apply(clientBuilder, Map.of(".*/consoleText", Duration.ofDays(1)));
+        }
+        OkHttpClient okHttpClient = clientBuilder.build();
+        return new MineConsoleLogs(okHttpClient, url, groovyScript, System.getProperty("status", "failure"), miners, pushDown,
+                Integer.getInteger("projectsPerPage", 500));
+    }
+
+    private String getCrumb(OkHttpClient client, String credential) {
+        Request request = new Request.Builder().get().url("https://jenkins.moderne.ninja/crumbIssuer/api/json")
+                .header("Authorization", credential).build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                log.error("Unexpected status {}", response);
+                throw new IllegalStateException("Unexpected status " + response.code());
+            }
+            JsonNode responseNode = new ObjectMapper().readValue(Objects.requireNonNull(response.body()).string(), JsonNode.class);
+            return responseNode.get("crumb").asText();
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void run() {
+        try {
+            String scriptText = String.join("\n", Files.readAllLines(script));
+            String basicCredential = Credentials.basic("greg@moderne.io", "11f8c789ae3574b09a6bfbbdfb157900e4");
+            String crumb = getCrumb(client, basicCredential);
+            if (pushDown) {
+                mineOnController(scriptText, basicCredential, crumb);
+                miners.forEach(miner -> miner.report(System.out));
+                return;
+            }
+            ScriptListing listing = new ScriptListing(client, url,
+                    Headers.of("Authorization", basicCredential, "Jenkins-Crumb", crumb), script, scriptText, projectsPerPage);
+            DownloadReport<JobSummary> report;
+            AtomicInteger found = new AtomicInteger();
+            try (ConsoleLogDownloader<JobSummary> downloader = new ConsoleLogDownloader<>(client, DownloadSettings.fromSystemProperties())) {
+                // each page's builds start downloading while the next page is listed
+                listing.forEachLine(listed -> {
+                    JobSummary s = JobSummary.parse(listed);
+                    if (!s.status().equals(status)) {
+                        return;
+                    }
+                    found.incrementAndGet();
+                    Request r = new Request.Builder()
+                            .get()
+                            .url(s.consoleTextUrl())
+                            .header("Authorization", basicCredential)
+                            .header("Jenkins-Crumb", crumb)
+                            .build();
+                    downloader.submit(s, r, (body, headers) -> scanner.scan(body.byteStream(), line -> mine(s, line)));
+                });
+                log.info("Queued up fetches for {} {} build(s) to mine with {} miner(s)", found, status, miners.size());
+                report = downloader.await(Duration.ofMinutes(10));
+            }
+            if (report.isComplete()) {
+                log.info("Fetching output complete");
+            } else {
+                log.warn("Fetched {} of {} console logs", report.succeeded().size(), found.get());
+            }
+            miners.forEach(miner -> miner.report(System.out));
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void mineOnController(String scriptText, String basicCredential, String crumb) throws IOException {
+        String pushedDown = ScriptListing.withVariable(script, scriptText, "patterns", encode(patterns));
+        pushedDown = ScriptListing.withVariable(script, pushedDown, "status", encode(status));
+        // the controller reads every log of the matching builds and may not send anything for minutes in between
+        OkHttpClient patient = client.newBuilder()
+                .readTimeout(30, TimeUnit.MINUTES)
+                .callTimeout(30, TimeUnit.MINUTES)
+                .build();
+        Call call = patient.newCall(new Request.Builder()
+                .post(new FormBody.Builder()
+                        .add("script", pushedDown)
+                        .build())
+                .url(url)
+                .header("Authorization", basicCredential)
+                .header("Jenkins-Crumb", crumb)
+                .build());
+        int matched = 0;
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful()) {
+                throw new IllegalStateException("Unexpected status " + response.code() + " running " + script);
+            }
+            ResponseBody output = response.body();
+            assert output != null;
+            Scanner lines = new Scanner(output.byteStream());
+            while (lines.hasNextLine()) {
+                // a job summary followed by the matching line, which may contain tabs of its own
+                String[] parts = lines.nextLine().split("\t", 6);
+                if (parts.length < 6) {
+                    throw new IllegalStateException("Unexpected output of " + script + ": " + String.join("\t", parts));
+                }
+                mine(new JobSummary(parts[0], parts[1], parts[2], parts[3], parts[4]), parts[5]);
+                matched++;
+            }
+        }
+        log.info("Mined {} matching line(s) of {} builds on the controller", matched, status);
+    }
+
+    /**
+     * Base64, so literals don't need escaping for Groovy.
+     */
+    private static String encode(List<LinePattern> patterns) {
+        try {
+            return Base64.getEncoder().encodeToString(new ObjectMapper().writeValueAsBytes(patterns));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void mine(JobSummary build, String line) {
+        for (LogMiner miner : miners) {
+            for (LinePattern pattern : miner.patterns()) {
+                if (pattern.matches(line)) {
+                    miner.mine(build, line);
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Cluster representatives, fingerprints and member console logs persisted between categorization runs so that only
+ * logs that are not yet a member of any cluster need to be extracted and assigned. Members whose log has since been
+ * deleted are dropped when the store is loaded, and so are the clusters left without members.
+ */
+@Slf4j
+public class ClusterStore {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path file;
+    private final Path logDir;
+    private final Map<String, Cluster> clusters = new LinkedHashMap<>();
+    private final Set<String> members = new HashSet<>();
+
+    private ClusterStore(Path file, Path logDir) {
+        this.file = file;
+        this.logDir = logDir;
+    }
+
+    /**
+     * @param logDir where the member console logs are.
+     */
+    public static ClusterStore load(Path file, Path logDir) {
+        ClusterStore store = new ClusterStore(file, logDir);
+        if (Files.exists(file)) {
+            int pruned = 0;
+            try {
+                for (Cluster cluster : MAPPER.readValue(file.toFile(), State.class).getClusters()) {
+                    int members = cluster.getMembers().size();
+                    cluster.getMembers().removeIf(member -> !Files.exists(logDir.resolve(member)));
+                    pruned += members - cluster.getMembers().size();
+                    if (!cluster.getMembers().isEmpty()) {
+                        store.clusters.put(cluster.getRepresentative(), cluster);
+                        store.members.addAll(cluster.getMembers());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            log.info("Loaded {} cluster(s) with {} member(s) from {}, dropped {} deleted log(s)",
+                    store.clusters.size(), store.members.size(), file, pruned);
+        }
+        return store;
+    }
+
+    public boolean contains(String member) {
+        return members.contains(member);
+    }
+
+    public ExceptionClusterer restore(int threshold) {
+        return restore(new Sift4Similarity(threshold), new FrameDictionary());
+    }
+
+    public ExceptionClusterer restore(FailureSimilarity similarity, FrameDictionary frames) {
+        ExceptionClusterer clusterer = new ExceptionClusterer(similarity, frames);
+        for (Cluster cluster : clusters.values()) {
+            clusterer.restore(cluster.getRepresentative(), cluster.getFingerprints());
+        }
+        return clusterer;
+    }
+
+    public void add(String representative, String member) {
+        if (members.add(member)) {
+            Cluster cluster = clusters.computeIfAbsent(representative, r -> new Cluster(r, new ArrayList<>(), new ArrayList<>()));
+            cluster.getMembers().add(member);
+        }
+    }
+
+    public void save(ExceptionClusterer clusterer) {
+        clusters.values().forEach(cluster -> cluster.getFingerprints().clear());
+        clusterer.fingerprints().forEach((fingerprint, representative) -> {
+            Cluster cluster = clusters.get(representative);
+            if (cluster != null) {
+                cluster.getFingerprints().add(fingerprint);
+            }
+        });
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), new State(new ArrayList<>(clusters.values())));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return member logs resolved against the log directory, keyed by representative, largest cluster first.
+     */
+    public Map<String, List<Path>> groups() {
+        List<Cluster> sorted = new ArrayList<>(clusters.values());
+        sorted.sort((o1, o2) -> Integer.compare(o2.getMembers().size(), o1.getMembers().size()));
+        Map<String, List<Path>> groups = new LinkedHashMap<>(sorted.size());
+        for (Cluster cluster : sorted) {
+            List<Path> paths = new ArrayList<>(cluster.getMembers().size());
+            cluster.getMembers().forEach(member -> paths.add(logDir.resolve(member)));
+            groups.put(cluster.getRepresentative(), paths);
+        }
+        return groups;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    // stores written before members were pruned also have a count
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Cluster {
+        private String representative;
+        private List<Long> fingerprints;
+        private List<String> members;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class State {
+        private List<Cluster> clusters;
+    }
+}
@@ -0,0 +1,86 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hashes an exception after masking the parts that vary between otherwise identical failures: line numbers and
+ * other numbers, hashes, lambda and proxy class suffixes, temp and workspace paths, and timestamps.
+ */
+public final class ExceptionFingerprint {
+    private static final Pattern VOLATILE = Pattern.compile(String.join("|",
+            "(?<lambda>\\$\\$Lambda(?:\\$\\d+)?(?:/(?:0x)?[0-9a-fA-F]+)?)",
+            "(?<accessor>(?:Generated(?:Serialization)?(?:Method|Constructor)Accessor|\\$Proxy)\\d+)",
+            "(?<tmp>(?:/private)?(?:/tmp|/var/tmp|/var/folders)/[^\\s:'\"()\\[\\]]*)",
+            "(?<workspace>/workspace/[^/\\s:'\"()\\[\\]]+)",
+            "(?<timestamp>\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}:\\d{2}(?:[.,]\\d+)?(?:Z|[+-]\\d{2}:?\\d{2})?|\\b\\d{2}:\\d{2}:\\d{2}(?:[.,]\\d+)?)",
+            "(?<uuid>\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b)",
+            "(?<hash>\\b(?=[0-9a-f]*\\d)(?=[0-9a-f]*[a-f])[0-9a-f]{7,}\\b|@[0-9a-f]{4,}\\b|0x[0-9a-fA-F]+)",
+            "(?<number>\\d+)"));
+
+    private ExceptionFingerprint() {
+    }
+
+    public static String normalize(String exception) {
+        Matcher m = VOLATILE.matcher(exception);
+        StringBuilder normalized = new StringBuilder(exception.length());
+        int last = 0;
+        while (m.find()) {
+            normalized.append(exception, last, m.start());
+            if (m.group("lambda") != null) {
+                normalized.append("$$Lambda");
+            } else if (m.group("accessor") != null) {
+                normalized.append("<accessor>");
+            } else if (m.group("tmp") != null) {
+                normalized.append("<tmp>");
+            } else if (m.group("workspace") != null) {
+                normalized.append("/workspace/<job>");
+            } else if (m.group("timestamp") != null) {
+                normalized.append("<timestamp>");
+            } else if (m.group("uuid") != null) {
+                normalized.append("<uuid>");
+            } else if (m.group("hash") != null) {
+                normalized.append("<hash>");
+            } else {
+                normalized.append('#');
+            }
+            last = m.end();
+        }
+        return normalized.append(exception, last, exception.length()).toString();
+    }
+
+    public static long of(String exception) {
+        return toLong(sha256().digest(normalize(exception).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Same fingerprint as {@link #of(String)} of the decoded exception, since normalization never spans lines, but
+     * hashing the normalized frames the dictionary already holds.
+     */
+    public static long of(int[] normalizedFrames, FrameDictionary frames) {
+        MessageDigest digest = sha256();
+        for (int i = 0; i < normalizedFrames.length; i++) {
+            if (i > 0) {
+                digest.update((byte) '\n');
+            }
+            digest.update(frames.normalizedFrame(normalizedFrames[i]));
+        }
+        return toLong(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long toLong(byte[] digest) {
+        return ByteBuffer.wrap(digest).getLong();
+    }
+}
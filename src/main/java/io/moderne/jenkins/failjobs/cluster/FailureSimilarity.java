@@ -0,0 +1,20 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+/**
+ * Decides whether an exception belongs to the cluster of a representative, both given as
+ * {@link ExceptionFingerprint#normalize normalized} text. Implementations are given the threshold (a percentage) up
+ * front so they can reject a pair as soon as it provably, or for Sift4 by its running estimate, exceeds it.
+ */
+public interface FailureSimilarity {
+
+    boolean isSimilar(String representative, String exception);
+
+    static FailureSimilarity named(String name, int threshold) {
+        return switch (name) {
+            case "sift4" -> new Sift4Similarity(threshold);
+            case "levenshtein" -> new LevenshteinSimilarity(threshold);
+            case "jaccard" -> new TokenJaccardSimilarity(threshold);
+            default -> throw new IllegalArgumentException("Unknown similarity " + name + ", expected sift4, levenshtein or jaccard");
+        };
+    }
+}
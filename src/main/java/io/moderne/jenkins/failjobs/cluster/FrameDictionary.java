@@ -0,0 +1,120 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns exception lines, mostly repeated {@code \tat ...} frames, so that an exception is held as an {@code int[]}
+ * of frame IDs and memory grows with the number of distinct frames rather than with log volume. Every frame also
+ * maps to the ID of its {@link ExceptionFingerprint#normalize normalized} form, which is what similarity and
+ * fingerprinting work on so that line numbers and the like do not make two frames differ. Similarity is still
+ * computed on characters, over the {@link #decodeNormalized decoded} normalized frames, as a frame that differs in a
+ * single character is no less similar than before.
+ * <p>
+ * Lookups of known frames are lock free; interning a new frame is serialized.
+ */
+public class FrameDictionary {
+    private static final int[] NO_FRAMES = new int[0];
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<String, Integer> normalizedIds = new ConcurrentHashMap<>();
+
+    // written before the ID is published through the maps above
+    private volatile String[] frames = new String[1024];
+    private volatile int[] normalizedOf = new int[1024];
+    private volatile byte[][] normalizedBytes = new byte[1024][];
+    private int size;
+    private int normalizedSize;
+
+    public int id(String frame) {
+        Integer id = ids.get(frame);
+        return id == null ? intern(frame) : id;
+    }
+
+    public int[] encode(String exception) {
+        if (exception.isEmpty()) {
+            return NO_FRAMES;
+        }
+        String[] lines = exception.split("\n");
+        int[] encoded = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            encoded[i] = id(lines[i]);
+        }
+        return encoded;
+    }
+
+    public String decode(int[] exception) {
+        String[] lines = frames;
+        StringBuilder decoded = new StringBuilder();
+        for (int i = 0; i < exception.length; i++) {
+            if (i > 0) {
+                decoded.append('\n');
+            }
+            decoded.append(lines[exception[i]]);
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * @return the normalized frame IDs of an exception encoded by this dictionary.
+     */
+    public int[] normalize(int[] exception) {
+        int[] normalized = normalizedOf;
+        int[] result = new int[exception.length];
+        for (int i = 0; i < exception.length; i++) {
+            result[i] = normalized[exception[i]];
+        }
+        return result;
+    }
+
+    public String decodeNormalized(int[] normalizedFrames) {
+        byte[][] bytes = normalizedBytes;
+        StringBuilder decoded = new StringBuilder();
+        for (int i = 0; i < normalizedFrames.length; i++) {
+            if (i > 0) {
+                decoded.append('\n');
+            }
+            decoded.append(new String(bytes[normalizedFrames[i]], StandardCharsets.UTF_8));
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * @return the UTF-8 bytes of a normalized frame.
+     */
+    byte[] normalizedFrame(int normalizedId) {
+        return normalizedBytes[normalizedId];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int intern(String frame) {
+        Integer existing = ids.get(frame);
+        if (existing != null) {
+            return existing;
+        }
+        String normalized = ExceptionFingerprint.normalize(frame);
+        Integer normalizedId = normalizedIds.get(normalized);
+        if (normalizedId == null) {
+            normalizedId = normalizedSize++;
+            if (normalizedId == normalizedBytes.length) {
+                normalizedBytes = Arrays.copyOf(normalizedBytes, normalizedBytes.length * 2);
+            }
+            normalizedBytes[normalizedId] = normalized.getBytes(StandardCharsets.UTF_8);
+            normalizedIds.put(normalized, normalizedId);
+        }
+        int id = size++;
+        if (id == frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
+            normalizedOf = Arrays.copyOf(normalizedOf, normalizedOf.length * 2);
+        }
+        frames[id] = frame;
+        normalizedOf[id] = normalizedId;
+        ids.put(frame, id);
+        return id;
+    }
+}
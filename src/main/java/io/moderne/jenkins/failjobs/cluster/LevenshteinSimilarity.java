@@ -0,0 +1,67 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import java.util.Arrays;
+
+/**
+ * Levenshtein distance normalized by the longer string, accepting when {@code distance * 100 / maxLength < threshold}.
+ * Only the diagonal band that can stay within that bound is computed, and a row whose minimum already exceeds it
+ * ends the computation.
+ */
+public class LevenshteinSimilarity implements FailureSimilarity {
+    private final int threshold;
+
+    public LevenshteinSimilarity(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isSimilar(String representative, String exception) {
+        long maxLength = Math.max(representative.length(), exception.length());
+        if (maxLength == 0 || threshold <= 0) {
+            return false;
+        }
+        int maxDistance = (int) ((threshold * maxLength - 1) / 100);
+        return distance(representative, exception, maxDistance) <= maxDistance;
+    }
+
+    /**
+     * @return the edit distance, or {@code maxDistance + 1} if it is larger than {@code maxDistance}.
+     */
+    static int distance(String a, String b, int maxDistance) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int outside = maxDistance + 1;
+        int[] prev = new int[m + 1];
+        int[] cur = new int[m + 1];
+        Arrays.fill(prev, outside);
+        for (int j = 0; j <= Math.min(m, maxDistance); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            cur[from - 1] = from == 1 && i <= maxDistance ? i : outside;
+            int rowMin = cur[from - 1];
+            char ca = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(prev[j - 1] + cost, prev[j] + 1), cur[j - 1] + 1);
+                cur[j] = Math.min(d, outside);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (to < m) {
+                cur[to + 1] = outside;
+            }
+            if (rowMin > maxDistance) {
+                return outside;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[m];
+    }
+}
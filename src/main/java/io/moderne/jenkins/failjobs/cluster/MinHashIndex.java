@@ -0,0 +1,111 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Locality sensitive hashing over character shingles. Two texts land in the same bucket for at least one band
+ * with a probability that rises steeply with their shingle Jaccard similarity, so only those need a full comparison.
+ */
+public class MinHashIndex<T> {
+    private static final int SHINGLE_SIZE = 5;
+    private static final int BANDS = 32;
+    private static final int ROWS = 2;
+    private static final long SHINGLE_BASE = 1_000_003L;
+    private static final long[] SEEDS = new SplittableRandom(0x5EEDL).longs(BANDS * ROWS).toArray();
+    private static final long SHINGLE_BASE_POW = pow(SHINGLE_BASE, SHINGLE_SIZE - 1);
+
+    private final List<T> entries = new ArrayList<>();
+    private final Map<Long, List<Integer>> buckets = new HashMap<>();
+
+    public long[] signature(String text) {
+        long[] mins = new long[BANDS * ROWS];
+        Arrays.fill(mins, Long.MAX_VALUE);
+        if (text.isEmpty()) {
+            return mins;
+        }
+        if (text.length() <= SHINGLE_SIZE) {
+            update(mins, text.hashCode());
+            return mins;
+        }
+        long shingle = 0;
+        for (int i = 0; i < SHINGLE_SIZE; i++) {
+            shingle = shingle * SHINGLE_BASE + text.charAt(i);
+        }
+        update(mins, shingle);
+        for (int i = SHINGLE_SIZE; i < text.length(); i++) {
+            shingle = (shingle - text.charAt(i - SHINGLE_SIZE) * SHINGLE_BASE_POW) * SHINGLE_BASE + text.charAt(i);
+            update(mins, shingle);
+        }
+        return mins;
+    }
+
+    /**
+     * @return previously added values sharing at least one band with the signature, in insertion order.
+     */
+    public List<T> candidates(long[] signature) {
+        BitSet ids = new BitSet(entries.size());
+        for (int band = 0; band < BANDS; band++) {
+            List<Integer> bucket = buckets.get(bandKey(signature, band));
+            if (bucket != null) {
+                for (Integer id : bucket) {
+                    ids.set(id);
+                }
+            }
+        }
+        List<T> candidates = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            candidates.add(entries.get(id));
+        }
+        return candidates;
+    }
+
+    public void add(long[] signature, T value) {
+        int id = entries.size();
+        entries.add(value);
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>(1)).add(id);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static void update(long[] mins, long shingle) {
+        for (int i = 0; i < mins.length; i++) {
+            long h = mix(shingle ^ SEEDS[i]);
+            if (h < mins[i]) {
+                mins[i] = h;
+            }
+        }
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int row = 0; row < ROWS; row++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[band * ROWS + row];
+        }
+        return mix(key);
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long pow(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
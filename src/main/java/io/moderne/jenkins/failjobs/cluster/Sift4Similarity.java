@@ -0,0 +1,118 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sift4 with a max offset of 100, accepting when {@code distance * 100 / exception.length() < threshold}. The
+ * computation stops as soon as a lower bound of the final distance reaches that bound: the smaller cursor never moves
+ * backwards and advances with every match, so no more than {@code min(l1, l2) - min(c1, c2)} matches are still to come.
+ */
+public class Sift4Similarity implements FailureSimilarity {
+    private static final int MAX_OFFSET = 100;
+
+    private final int threshold;
+
+    public Sift4Similarity(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isSimilar(String representative, String exception) {
+        double maxDistance = (double) threshold * exception.length() / 100;
+        if (Math.abs(representative.length() - exception.length()) >= maxDistance) {
+            return false;
+        }
+        return distance(representative, exception, maxDistance) < maxDistance;
+    }
+
+    /**
+     * @return the Sift4 distance, or a value of at least {@code maxDistance} if the computation was cut short.
+     */
+    static double distance(String s1, String s2, double maxDistance) {
+        if (s1.isEmpty()) {
+            return s2.length();
+        }
+        if (s2.isEmpty()) {
+            return s1.length();
+        }
+        int l1 = s1.length();
+        int l2 = s2.length();
+        int c1 = 0;
+        int c2 = 0;
+        int lcss = 0;
+        int localCs = 0;
+        int trans = 0;
+        List<Offset> offsets = new ArrayList<>();
+        while (c1 < l1 && c2 < l2) {
+            if (s1.charAt(c1) == s2.charAt(c2)) {
+                localCs++;
+                boolean isTrans = false;
+                int i = 0;
+                while (i < offsets.size()) {
+                    Offset ofs = offsets.get(i);
+                    if (c1 <= ofs.c1 || c2 <= ofs.c2) {
+                        isTrans = Math.abs(c2 - c1) >= Math.abs(ofs.c2 - ofs.c1);
+                        if (isTrans) {
+                            trans++;
+                        } else if (!ofs.trans) {
+                            ofs.trans = true;
+                            trans++;
+                        }
+                        break;
+                    } else if (c1 > ofs.c2 && c2 > ofs.c1) {
+                        offsets.remove(i);
+                    } else {
+                        i++;
+                    }
+                }
+                offsets.add(new Offset(c1, c2, isTrans));
+            } else {
+                lcss += localCs;
+                localCs = 0;
+                if (c1 != c2) {
+                    c1 = Math.min(c1, c2);
+                    c2 = c1;
+                }
+                for (int i = 0; i < MAX_OFFSET && (c1 + i < l1 || c2 + i < l2); i++) {
+                    if (c1 + i < l1 && s1.charAt(c1 + i) == s2.charAt(c2)) {
+                        c1 += i - 1;
+                        c2--;
+                        break;
+                    }
+                    if (c2 + i < l2 && s1.charAt(c1) == s2.charAt(c2 + i)) {
+                        c1--;
+                        c2 += i - 1;
+                        break;
+                    }
+                }
+            }
+            c1++;
+            c2++;
+            int lowerBound = Math.abs(l1 - l2) + Math.min(c1, c2) - (lcss + localCs) + trans;
+            if (lowerBound >= maxDistance) {
+                return lowerBound;
+            }
+            if (c1 >= l1 || c2 >= l2) {
+                lcss += localCs;
+                localCs = 0;
+                c1 = Math.min(c1, c2);
+                c2 = c1;
+            }
+        }
+        lcss += localCs;
+        return Math.round(Math.max(l1, l2) - lcss + trans);
+    }
+
+    private static class Offset {
+        private final int c1;
+        private final int c2;
+        private boolean trans;
+
+        private Offset(int c1, int c2, boolean trans) {
+            this.c1 = c1;
+            this.c2 = c2;
+            this.trans = trans;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Jaccard similarity of the sets of identifier-like tokens, accepting when {@code (1 - jaccard) * 100 < threshold}.
+ * Pairs whose set sizes alone rule that out are rejected before intersecting, and intersecting stops once too many
+ * tokens have been missed. Representative token sets are cached since they are compared over and over.
+ */
+public class TokenJaccardSimilarity implements FailureSimilarity {
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{Alnum}_$.]+");
+
+    private final int threshold;
+    private final Map<String, Set<String>> representativeTokens = new ConcurrentHashMap<>();
+
+    public TokenJaccardSimilarity(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isSimilar(String representative, String exception) {
+        Set<String> a = representativeTokens.computeIfAbsent(representative, TokenJaccardSimilarity::tokens);
+        Set<String> b = tokens(exception);
+        if (a.isEmpty() || b.isEmpty()) {
+            return false;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        // the intersection is at most the smaller set, making the union the larger one
+        if ((long) (larger.size() - smaller.size()) * 100 >= (long) threshold * larger.size()) {
+            return false;
+        }
+        // (union - intersection) * 100 < threshold * union  <=>  intersection > (100 - threshold) * (|a| + |b|) / (200 - threshold)
+        long minIntersection = (long) (100 - threshold) * (a.size() + b.size()) / (200 - threshold) + 1;
+        long allowedMisses = smaller.size() - minIntersection;
+        int misses = 0;
+        for (String token : smaller) {
+            if (!larger.contains(token) && ++misses > allowedMisses) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> tokens(String text) {
+        Set<String> tokens = new HashSet<>();
+        for (String token : SEPARATOR.split(text)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
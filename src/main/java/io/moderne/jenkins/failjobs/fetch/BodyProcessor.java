@@ -0,0 +1,15 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import okhttp3.Headers;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Consumes a successful response body off the OkHttp threads. Runs again from scratch if the download is retried,
+ * e.g. because the body was cut off, so it must tolerate being repeated.
+ */
+@FunctionalInterface
+public interface BodyProcessor {
+    void process(ResponseBody body, Headers headers) throws IOException;
+}
@@ -0,0 +1,284 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import io.moderne.jenkins.util.AimdLimiter;
+import io.moderne.jenkins.util.FetchMetrics;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads with an adaptive number of requests per host, see {@link AimdLimiter}, and a bounded number of accepted
+ * downloads. Response bodies are handed to {@link BodyProcessor}s on a separate pool, so the OkHttp threads only do
+ * I/O, while the host slot is held until the body has been processed. Failed attempts are retried with exponential
+ * backoff, and every submitted download ends up in the {@link DownloadReport} as succeeded, failed or timed out.
+ */
+@Slf4j
+public class ConsoleLogDownloader<K> implements Closeable {
+    private final OkHttpClient client;
+    private final DownloadSettings settings;
+    private final ExecutorService processors;
+    private final ScheduledExecutorService retries;
+    private final Semaphore queueSlots;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final Set<Download> outstanding = ConcurrentHashMap.newKeySet();
+    private final List<K> succeeded = Collections.synchronizedList(new ArrayList<>());
+    private final List<DownloadReport.Failure<K>> failed = Collections.synchronizedList(new ArrayList<>());
+
+    public ConsoleLogDownloader(OkHttpClient client, DownloadSettings settings) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(64, settings.maxPerHost()));
+        dispatcher.setMaxRequestsPerHost(settings.maxPerHost());
+        this.client = client.newBuilder().dispatcher(dispatcher).build();
+        this.settings = settings;
+        this.processors = Executors.newFixedThreadPool(settings.processingThreads(), daemonThreads("console-log-processor"));
+        this.retries = Executors.newSingleThreadScheduledExecutor(daemonThreads("console-log-retry"));
+        this.queueSlots = new Semaphore(settings.queueCapacity());
+    }
+
+    /**
+     * Blocks while {@link DownloadSettings#queueCapacity()} downloads are still unfinished.
+     */
+    public void submit(K key, Request request, BodyProcessor processor) {
+        try {
+            queueSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queuing " + request.url(), e);
+        }
+        Download download = new Download(key, request, processor);
+        outstanding.add(download);
+        enqueue(download);
+    }
+
+    /**
+     * Waits for all submitted downloads, cancelling those still unfinished once the timeout expires.
+     */
+    public DownloadReport<K> await(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (this) {
+            long remaining;
+            while (!outstanding.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        List<K> timedOut = new ArrayList<>();
+        for (Download download : outstanding) {
+            if (download.done.compareAndSet(false, true)) {
+                timedOut.add(download.key);
+                Call call = download.call;
+                if (call != null) {
+                    call.cancel();
+                }
+                queueSlots.release();
+            }
+        }
+        outstanding.clear();
+        DownloadReport<K> report;
+        synchronized (succeeded) {
+            synchronized (failed) {
+                report = new DownloadReport<>(new ArrayList<>(succeeded), new ArrayList<>(failed), timedOut);
+            }
+        }
+        report.failed().forEach(f -> log.warn("Failed to download {}: {}", f.key(), f.reason()));
+        report.timedOut().forEach(k -> log.warn("Timed out downloading {}", k));
+        log.info("Downloads finished: {} succeeded, {} failed, {} timed out, concurrency limits {}", report.succeeded().size(), report.failed().size(), report.timedOut().size(), limits());
+        return report;
+    }
+
+    /**
+     * @return the current concurrency limit of every host downloaded from.
+     */
+    public Map<String, Integer> limits() {
+        Map<String, Integer> limits = new TreeMap<>();
+        hosts.forEach((host, h) -> limits.put(host, h.limiter.limit()));
+        return limits;
+    }
+
+    @Override
+    public void close() {
+        processors.shutdownNow();
+        retries.shutdownNow();
+        client.dispatcher().cancelAll();
+        client.dispatcher().executorService().shutdown();
+    }
+
+    private void enqueue(Download download) {
+        Host host = hosts.computeIfAbsent(download.request.url().host(), h -> new Host(
+                new AimdLimiter(h, settings.minPerHost(), settings.maxPerHost(), settings.healthyLatency())));
+        download.enqueued = System.nanoTime();
+        host.offer(download);
+        drain(host);
+    }
+
+    private void drain(Host host) {
+        Download download;
+        while ((download = host.next()) != null) {
+            if (download.done.get()) {
+                host.release();
+            } else {
+                start(host, download);
+            }
+        }
+    }
+
+    private void start(Host host, Download download) {
+        download.attempts.incrementAndGet();
+        FetchMetrics.global().queueWait(host.limiter.name(), System.nanoTime() - download.enqueued);
+        Call call = client.newCall(download.request);
+        download.call = call;
+        long started = System.nanoTime();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                if (!call.isCanceled()) {
+                    host.limiter.onOverload(e.toString());
+                }
+                attemptFailed(host, download, e.toString(), true);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                if (response.code() == 429 || response.code() == 503) {
+                    host.limiter.onOverload("Received " + response.code() + " from " + call.request().url());
+                } else {
+                    host.limiter.onSuccess(System.nanoTime() - started);
+                }
+                try {
+                    processors.execute(() -> process(host, download, response));
+                } catch (RejectedExecutionException e) {
+                    response.close();
+                    attemptFailed(host, download, "Downloader was closed", false);
+                }
+            }
+        });
+    }
+
+    /**
+     * The host slot is released exactly once, however processing ends, before the download is completed or retried.
+     */
+    private void process(Host host, Download download, Response response) {
+        String failure = null;
+        boolean retryable = false;
+        try (response) {
+            ResponseBody body = response.body();
+            if (download.done.get()) {
+                return;
+            } else if (!response.isSuccessful() || body == null) {
+                failure = "Received " + response.code();
+                retryable = response.code() == 429 || response.code() >= 500;
+            } else {
+                download.processor.process(body, response.headers());
+            }
+        } catch (IOException e) {
+            failure = e.toString();
+            retryable = true;
+        } catch (RuntimeException e) {
+            failure = e.toString();
+        } finally {
+            finishAttempt(host);
+        }
+        if (failure == null) {
+            complete(download, null);
+        } else {
+            retryOrFail(download, failure, retryable);
+        }
+    }
+
+    private void attemptFailed(Host host, Download download, String reason, boolean retryable) {
+        finishAttempt(host);
+        retryOrFail(download, reason, retryable);
+    }
+
+    private void retryOrFail(Download download, String reason, boolean retryable) {
+        if (retryable && download.attempts.get() < settings.maxAttempts() && !download.done.get()) {
+            long delay = settings.retryBackoff().toMillis() << (download.attempts.get() - 1);
+            log.debug("Retrying {} in {}ms after {}", download.request.url(), delay, reason);
+            // the exception class or status code, without the message
+            FetchMetrics.global().retry(FetchMetrics.endpoint(download.request.url().encodedPath()), reason.split(":", 2)[0]);
+            try {
+                retries.schedule(() -> enqueue(download), delay, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                reason += ", not retried as the downloader was closed";
+            }
+        }
+        complete(download, download.request.url() + ": " + reason);
+    }
+
+    private void finishAttempt(Host host) {
+        host.release();
+        drain(host);
+    }
+
+    private void complete(Download download, String failure) {
+        if (download.done.compareAndSet(false, true)) {
+            if (failure == null) {
+                succeeded.add(download.key);
+            } else {
+                failed.add(new DownloadReport.Failure<>(download.key, failure));
+            }
+            outstanding.remove(download);
+            queueSlots.release();
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Download {
+        private final K key;
+        private final Request request;
+        private final BodyProcessor processor;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Call call;
+        private volatile long enqueued;
+
+        private Download(K key, Request request, BodyProcessor processor) {
+            this.key = key;
+            this.request = request;
+            this.processor = processor;
+        }
+    }
+
+    private class Host {
+        private final Deque<Download> pending = new ArrayDeque<>();
+        private final AimdLimiter limiter;
+
+        private Host(AimdLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        synchronized void offer(Download download) {
+            pending.add(download);
+        }
+
+        synchronized Download next() {
+            if (pending.isEmpty() || !limiter.tryAcquire()) {
+                return null;
+            }
+            return pending.poll();
+        }
+
+        void release() {
+            limiter.release();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import lombok.RequiredArgsConstructor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Fetches only the last {@code window} bytes of a console log through progressiveText, where failures almost always
+ * are. While the window starts inside a stack trace, it is doubled up to {@code maxWindow} and fetched again.
+ */
+@RequiredArgsConstructor
+public class ConsoleLogTail {
+    private final OkHttpClient client;
+    private final long window;
+    private final long maxWindow;
+
+    /**
+     * @param consoleText request for the whole log, whose headers are reused.
+     * @param logLength   length of the log as Jenkins counts it, see {@code find-failed.groovy}.
+     */
+    public Request request(Request consoleText, long logLength) {
+        return request(consoleText, logLength, window);
+    }
+
+    /**
+     * Hands the tail on to {@code next} without the line cut off at the start of the window. Any wider windows are
+     * fetched on the calling thread, so they count against the same download slot.
+     * <p>
+     * Windows are fetched with the byte before them, so a window starting right after a line break keeps its first
+     * line, which is often the exception the tail is fetched for.
+     */
+    public BodyProcessor then(Request consoleText, long logLength, BodyProcessor next) {
+        return (body, headers) -> {
+            long window = this.window;
+            byte[] tail = body.bytes();
+            while (true) {
+                boolean whole = start(logLength, window) == 0;
+                int from = whole ? 0 : nextLine(tail);
+                if (whole || window >= maxWindow || !startsInStackTrace(tail, from)) {
+                    next.process(ResponseBody.create(Arrays.copyOfRange(tail, from, tail.length), body.contentType()), headers);
+                    return;
+                }
+                window = Math.min(window * 2, maxWindow);
+                try (Response response = client.newCall(request(consoleText, logLength, window)).execute()) {
+                    ResponseBody wider = response.body();
+                    if (!response.isSuccessful() || wider == null) {
+                        throw new IOException("Received " + response.code() + " widening the tail of " + consoleText.url());
+                    }
+                    tail = wider.bytes();
+                }
+            }
+        };
+    }
+
+    private static Request request(Request consoleText, long logLength, long window) {
+        return consoleText.newBuilder()
+                .url(FetchManifest.progressiveTextUrl(consoleText.url().toString(), start(logLength, window)))
+                .build();
+    }
+
+    private static long start(long logLength, long window) {
+        return Math.max(0, logLength - window - 1);
+    }
+
+    static int nextLine(byte[] tail) {
+        for (int i = 0; i < tail.length; i++) {
+            if (tail[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return tail.length;
+    }
+
+    static boolean startsInStackTrace(byte[] tail, int from) {
+        String line = new String(tail, from, Math.min(tail.length - from, 16), StandardCharsets.UTF_8);
+        return line.startsWith("\tat ") || line.startsWith("\t... ") || line.startsWith("Caused by: ");
+    }
+}
@@ -0,0 +1,13 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import java.util.List;
+
+public record DownloadReport<K>(List<K> succeeded, List<Failure<K>> failed, List<K> timedOut) {
+
+    public record Failure<K>(K key, String reason) {
+    }
+
+    public boolean isComplete() {
+        return failed.isEmpty() && timedOut.isEmpty();
+    }
+}
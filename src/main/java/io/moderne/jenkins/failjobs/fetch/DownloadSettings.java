@@ -0,0 +1,29 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import java.time.Duration;
+
+/**
+ * @param maxPerHost        downloads running against one host, from request until the body has been processed, that
+ *                          the adaptive limit may grow to while the host keeps responding quickly.
+ * @param queueCapacity     downloads accepted but not finished yet; submitting more blocks.
+ * @param processingThreads threads processing response bodies.
+ * @param maxAttempts       attempts per download for connection failures, 429 and 5xx responses.
+ * @param retryBackoff      delay before the first retry, doubling for every further attempt.
+ * @param minPerHost        downloads per host to start with and to back off to when the host is overloaded.
+ * @param healthyLatency    p95 time to response headers above which a host is considered overloaded.
+ */
+public record DownloadSettings(int maxPerHost, int queueCapacity, int processingThreads, int maxAttempts,
+                               Duration retryBackoff, int minPerHost, Duration healthyLatency) {
+
+    public static DownloadSettings fromSystemProperties() {
+        return new DownloadSettings(
+                Integer.getInteger("maxPerHost", 16),
+                Integer.getInteger("queueCapacity", 1024),
+                Integer.getInteger("processingThreads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("maxAttempts", 3),
+                Duration.ofSeconds(1),
+                Integer.getInteger("minPerHost", 2),
+                Duration.ofMillis(Long.getLong("healthyLatencyMs", 2000))
+        );
+    }
+}
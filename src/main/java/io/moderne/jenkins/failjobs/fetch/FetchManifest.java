@@ -0,0 +1,128 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How much of each build's console log has been fetched, keyed by job name and build number, so later runs can skip
+ * complete logs and fetch only what was appended since through Jenkins' {@code logText/progressiveText?start=}.
+ */
+@Slf4j
+public class FetchManifest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private FetchManifest(Path file) {
+        this.file = file;
+    }
+
+    public static FetchManifest load(Path file) {
+        FetchManifest manifest = new FetchManifest(file);
+        if (Files.exists(file)) {
+            try {
+                manifest.entries.putAll(MAPPER.readValue(file.toFile(), new TypeReference<Map<String, Entry>>() {
+                }));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            log.info("Loaded {} console log(s) from {}", manifest.entries.size(), file);
+        }
+        return manifest;
+    }
+
+    /**
+     * @return where to continue fetching into the console log, from scratch if the local copy went missing or is
+     * shorter than recorded.
+     */
+    public Entry resumeFrom(String jobName, String buildNumber, Path consoleLog) {
+        Entry entry = entries.get(key(jobName, buildNumber));
+        try {
+            if (entry == null || !Files.exists(consoleLog) || Files.size(consoleLog) < entry.length()) {
+                return Entry.NONE;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entry;
+    }
+
+    /**
+     * For a build whose log is thrown away, so a later run fetches it from scratch.
+     */
+    public void forget(String jobName, String buildNumber) {
+        entries.remove(key(jobName, buildNumber));
+    }
+
+    public static HttpUrl progressiveTextUrl(String consoleTextUrl, Entry from) {
+        return progressiveTextUrl(consoleTextUrl, from.offset());
+    }
+
+    public static HttpUrl progressiveTextUrl(String consoleTextUrl, long start) {
+        return HttpUrl.get(consoleTextUrl.replaceFirst("consoleText$", "logText/progressiveText"))
+                .newBuilder()
+                .addQueryParameter("start", Long.toString(start))
+                .build();
+    }
+
+    /**
+     * Appends a progressiveText response to the console log. The log is first cut back to the recorded length, so a
+     * retry of a download that was cut off doesn't leave the partial chunk behind.
+     */
+    public BodyProcessor appendTo(String jobName, String buildNumber, Path consoleLog, Entry from) {
+        return (body, headers) -> {
+            long length;
+            try (FileChannel channel = FileChannel.open(consoleLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(from.length());
+                channel.position(from.length());
+                OutputStream out = Channels.newOutputStream(channel);
+                body.byteStream().transferTo(out);
+                out.flush();
+                length = channel.size();
+            }
+            // Jenkins' offsets count console notes that progressiveText strips, so they can't be derived from the file
+            String textSize = headers.get("X-Text-Size");
+            long offset = textSize == null ? from.offset() + length - from.length() : Long.parseLong(textSize);
+            entries.put(key(jobName, buildNumber), new Entry(offset, length, !Boolean.parseBoolean(headers.get("X-More-Data"))));
+        };
+    }
+
+    public void save() {
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), new TreeMap<>(entries));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String key(String jobName, String buildNumber) {
+        return jobName + "#" + buildNumber;
+    }
+
+    /**
+     * @param offset   position in Jenkins' log to continue from.
+     * @param length   bytes of the local console log covering everything before the offset.
+     * @param complete whether the build had finished, so there is nothing left to fetch.
+     */
+    public record Entry(long offset, long length, boolean complete) {
+        public static final Entry NONE = new Entry(0, 0, false);
+    }
+}
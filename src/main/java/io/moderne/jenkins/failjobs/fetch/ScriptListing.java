@@ -0,0 +1,84 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a Groovy script listing builds through {@code /scriptText}, a page of projects per request. Jenkins only sends
+ * a script's output once the script has finished, so asking for one page at a time is what lets the caller start on
+ * the first builds while later projects haven't been looked at yet. A script that has more projects to list prints
+ * {@value #NEXT} and a cursor, which is handed back to it as {@code after} for the next page.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ScriptListing {
+    private static final String NEXT = "#next\t";
+
+    private final OkHttpClient client;
+    private final HttpUrl url;
+    private final Headers headers;
+    private final Path script;
+    private final String scriptText;
+    private final int projectsPerPage;
+
+    /**
+     * @return the number of lines listed.
+     */
+    public int forEachLine(Consumer<String> action) throws IOException {
+        String pageScript = withVariable(script, scriptText, "pageSize", Integer.toString(projectsPerPage));
+        String after = null;
+        int pages = 0;
+        int lines = 0;
+        do {
+            Call call = client.newCall(new Request.Builder()
+                    .post(new FormBody.Builder()
+                            .add("script", after == null ? pageScript : withVariable(script, pageScript, "after", after))
+                            .build())
+                    .url(url)
+                    .headers(headers)
+                    .build());
+            // reading a page waits for downloads once the queue is full
+            call.timeout().timeout(10, TimeUnit.MINUTES);
+            after = null;
+            try (Response response = call.execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IllegalStateException("Unexpected status " + response.code() + " running " + script);
+                }
+                ResponseBody body = response.body();
+                assert body != null;
+                Scanner scanner = new Scanner(body.byteStream());
+                while (scanner.hasNextLine()) {
+                    String line = scanner.nextLine();
+                    if (line.startsWith(NEXT)) {
+                        after = line.substring(NEXT.length());
+                    } else {
+                        action.accept(line);
+                        lines++;
+                    }
+                }
+            }
+            pages++;
+        } while (after != null);
+        log.debug("Listed {} line(s) in {} page(s) of {} projects", lines, pages, projectsPerPage);
+        return lines;
+    }
+
+    /**
+     * Sets a variable the script declares as {@code def name = null}. Values are inserted as a Groovy string literal
+     * as they are, so anything that may contain quotes or backslashes has to be encoded first.
+     */
+    public static String withVariable(Path script, String scriptText, String name, String value) {
+        String placeholder = "def " + name + " = null";
+        if (!scriptText.contains(placeholder)) {
+            throw new IllegalStateException(script + " has no '" + placeholder + "' line to set " + name + " on");
+        }
+        return scriptText.replace(placeholder, "def " + name + " = '" + value + "'");
+    }
+}
@@ -0,0 +1,35 @@
+package io.moderne.jenkins.failjobs.mine;
+
+import io.moderne.jenkins.failjobs.scan.LinePattern;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Jobs whose Maven build ran into the {@code maven-default-http-blocker} mirror.
+ */
+public class HttpBlockerMiner implements LogMiner {
+    private final Set<String> jobs = new ConcurrentSkipListSet<>();
+
+    @Override
+    public List<LinePattern> patterns() {
+        return List.of(new LinePattern("maven-default-http-blocker", false));
+    }
+
+    @Override
+    public void mine(JobSummary build, String line) {
+        jobs.add(build.jobName().substring(7).replaceFirst("_", "/"));
+    }
+
+    @Override
+    public void report(PrintStream out) {
+        // output in a format suitable for pasting into a literal map in RepoCsvBatch
+        jobs.forEach(jobName -> out.println("\"" + jobName + "\","));
+    }
+
+    public Set<String> jobs() {
+        return jobs;
+    }
+}
@@ -0,0 +1,13 @@
+package io.moderne.jenkins.failjobs.mine;
+
+/**
+ * A build as listed by {@code fetch-projects.groovy}.
+ */
+public record JobSummary(String jobName, String buildNumber, String buildTool, String status,
+                         String consoleTextUrl) {
+
+    public static JobSummary parse(String line) {
+        String[] parts = line.split("\t");
+        return new JobSummary(parts[0], parts[1], parts[2], parts[3], parts[4]);
+    }
+}
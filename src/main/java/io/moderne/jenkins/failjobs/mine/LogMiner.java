@@ -0,0 +1,31 @@
+package io.moderne.jenkins.failjobs.mine;
+
+import io.moderne.jenkins.failjobs.scan.LinePattern;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * A question asked of every console log. All registered miners share one download of each log and one pass over it,
+ * each only seeing the lines matching its own {@link #patterns()}. Logs are mined concurrently and a download that
+ * is retried is mined again, so results must be collected in thread-safe, idempotent aggregates.
+ */
+public interface LogMiner {
+
+    List<LinePattern> patterns();
+
+    void mine(JobSummary build, String line);
+
+    /**
+     * Prints the answer once all console logs have been mined.
+     */
+    void report(PrintStream out);
+
+    static LogMiner named(String name) {
+        return switch (name) {
+            case "http-blocker" -> new HttpBlockerMiner();
+            case "maven-mirrors" -> new MavenMirrorMiner();
+            default -> throw new IllegalArgumentException("Unknown miner " + name + ", expected http-blocker or maven-mirrors");
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package io.moderne.jenkins.failjobs.mine;
+
+import io.moderne.jenkins.failjobs.scan.LinePattern;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Repositories blocked by {@code maven-default-http-blocker}, printed as https mirror definitions.
+ */
+public class MavenMirrorMiner implements LogMiner {
+    private static final Pattern repoPattern = Pattern.compile("\s*(.*?)\s+\\((.*?),\s+(.*?),\s+(.*?)\\),?");
+
+    private static final String mirrorTemplate = """
+            <mirror>
+                <id>%s</id>
+                <mirrorOf>%s</mirrorOf>
+                <url>%s</url>
+            </mirror>
+            """;
+
+    // repo id to url
+    private final Map<String, String> mirrors = new ConcurrentSkipListMap<>();
+
+    @Override
+    public List<LinePattern> patterns() {
+        return List.of(new LinePattern("Blocked mirror for repositories", false));
+    }
+
+    @Override
+    public void mine(JobSummary build, String line) {
+        if (!line.contains("maven-default-http-blocker")) {
+            return;
+        }
+        int blockedMirrorIdx = line.indexOf("Blocked mirror");
+        int repoArrayStartIdx = line.indexOf('[', blockedMirrorIdx);
+        int repoArrayEndIdx = line.indexOf(']', repoArrayStartIdx);
+        if (repoArrayStartIdx == -1 || repoArrayEndIdx == -1) {
+            return;
+        }
+        String reposStr = line.substring(repoArrayStartIdx + 1, repoArrayEndIdx);
+        // apache.snapshots (http://repository.apache.org/snapshots, default, snapshots), java.net (http://download.java.net/maven/2/, default, releases+snapshots), servicemix.m2 (http://svn.apache.org/repos/asf/servicemix/m2-repo/, default, releases+snapshots), apache.incubating (http://people.apache.org/repo/m2-incubating-repository, default, releases+snapshots), codehaus (http://repository.codehaus.org, default, releases+snapshots)
+        Matcher m = repoPattern.matcher(reposStr);
+        while (m.find()) {
+            String repoId = m.group(1);
+            String repoUrl = m.group(2);
+            if (!repoUrl.endsWith("/")) {
+                repoUrl += "/";
+            }
+            String cachedRepoUrl = mirrors.putIfAbsent(repoId, repoUrl);
+            if (cachedRepoUrl != null && !cachedRepoUrl.equals(repoUrl)) {
+                throw new IllegalStateException("mirror conflict, repoId: " + repoId + " already exists with " + cachedRepoUrl + ", which doesn't match " + repoUrl);
+            }
+        }
+    }
+
+    @Override
+    public void report(PrintStream out) {
+        for (Map.Entry<String, String> mirror : mirrors.entrySet()) {
+            out.printf(mirrorTemplate + "%n", "secure-" + mirror.getKey(), mirror.getKey(), mirror.getValue().replaceFirst("http://", "https://"));
+        }
+    }
+
+    public Map<String, String> mirrors() {
+        return mirrors;
+    }
+}
@@ -0,0 +1,37 @@
+package io.moderne.jenkins.failjobs.scan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A literal that a console log line must contain, or start with when {@code prefix} is set.
+ */
+public record LinePattern(String literal, boolean prefix) {
+
+    /**
+     * Parses a {@code contains:<literal>} or {@code prefix:<literal>} line where {@code \t} and {@code \\} are escapes.
+     */
+    public static LinePattern parse(String line) {
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected contains:<literal> or prefix:<literal> but was " + line);
+        }
+        String kind = line.substring(0, colon);
+        String literal = line.substring(colon + 1).replace("\\t", "\t").replace("\\\\", "\\");
+        if (literal.isEmpty()) {
+            throw new IllegalArgumentException("Empty pattern " + line);
+        }
+        return switch (kind) {
+            case "contains" -> new LinePattern(literal, false);
+            case "prefix" -> new LinePattern(literal, true);
+            default -> throw new IllegalArgumentException("Unknown pattern kind " + kind + " in " + line);
+        };
+    }
+
+    public boolean matches(String line) {
+        return prefix ? line.startsWith(literal) : line.contains(literal);
+    }
+
+    byte[] bytes() {
+        return literal.getBytes(StandardCharsets.UTF_8);
+    }
+}
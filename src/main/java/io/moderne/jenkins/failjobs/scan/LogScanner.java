@@ -0,0 +1,216 @@
+package io.moderne.jenkins.failjobs.scan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+
+/**
+ * Finds the lines of a console log matching any {@link LinePattern} in a single pass over the memory-mapped bytes,
+ * using an Aho-Corasick automaton compiled to a byte-indexed transition table. Only matching lines are decoded.
+ */
+public class LogScanner {
+    private static final int ALPHABET = 256;
+    private static final long REGION_SIZE = 1L << 30;
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    private final int[] transitions;
+    private final boolean[] containsMatch;
+    private final boolean[] prefixMatch;
+    private final int[] depth;
+
+    public LogScanner(List<LinePattern> patterns) {
+        int maxStates = 1;
+        for (LinePattern pattern : patterns) {
+            maxStates += pattern.bytes().length;
+        }
+        int[] trie = new int[maxStates * ALPHABET];
+        Arrays.fill(trie, -1);
+        boolean[] contains = new boolean[maxStates];
+        boolean[] prefix = new boolean[maxStates];
+        int[] depths = new int[maxStates];
+        int states = 1;
+        for (LinePattern pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern.bytes()) {
+                int next = trie[state * ALPHABET + (b & 0xFF)];
+                if (next < 0) {
+                    next = states++;
+                    trie[state * ALPHABET + (b & 0xFF)] = next;
+                    depths[next] = depths[state] + 1;
+                }
+                state = next;
+            }
+            if (pattern.prefix()) {
+                prefix[state] = true;
+            } else {
+                contains[state] = true;
+            }
+        }
+
+        // breadth-first completion of the trie into a DFA, inheriting contains matches along failure links
+        int[] failure = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie[c];
+            if (next < 0) {
+                trie[c] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            contains[state] |= contains[failure[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = trie[state * ALPHABET + c];
+                if (next < 0) {
+                    trie[state * ALPHABET + c] = trie[failure[state] * ALPHABET + c];
+                } else {
+                    failure[next] = trie[failure[state] * ALPHABET + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(trie, states * ALPHABET);
+        this.containsMatch = Arrays.copyOf(contains, states);
+        this.prefixMatch = Arrays.copyOf(prefix, states);
+        this.depth = Arrays.copyOf(depths, states);
+    }
+
+    public static LogScanner fromConfig(Path config) {
+        try (InputStream in = Files.newInputStream(config)) {
+            return new LogScanner(readPatterns(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static LogScanner defaults() {
+        try (InputStream in = Objects.requireNonNull(LogScanner.class.getResourceAsStream("/failure-patterns.txt"))) {
+            return new LogScanner(readPatterns(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<LinePattern> readPatterns(InputStream in) throws IOException {
+        List<LinePattern> patterns = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    patterns.add(LinePattern.parse(line));
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * @return the matching lines of the log joined with newlines.
+     */
+    public String scan(Path log) {
+        StringJoiner matches = new StringJoiner("\n");
+        scan(log, matches::add);
+        return matches.toString();
+    }
+
+    public void scan(Path log, Consumer<String> matches) {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(REGION_SIZE, size - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int consumed = scan(region, last, matches);
+                if (consumed == 0) {
+                    // a single line longer than a region, cut it at the region boundary
+                    consumed = scan(region, true, matches);
+                }
+                position += consumed;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Scans a log as it is read, e.g. straight off an HTTP response, keeping only the unfinished last line between
+     * reads. Lines longer than the buffer are cut like lines longer than a mapped region.
+     */
+    public void scan(InputStream log, Consumer<String> matches) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        int filled = 0;
+        int read;
+        while ((read = log.read(bytes, filled, bytes.length - filled)) != -1) {
+            filled += read;
+            buffer.limit(filled);
+            int consumed = scan(buffer, false, matches);
+            if (consumed == 0 && filled == bytes.length) {
+                consumed = scan(buffer, true, matches);
+            }
+            System.arraycopy(bytes, consumed, bytes, 0, filled - consumed);
+            filled -= consumed;
+        }
+        buffer.limit(filled);
+        scan(buffer, true, matches);
+    }
+
+    /**
+     * @return the number of bytes up to and including the last complete line, or the whole buffer if {@code last}.
+     */
+    int scan(ByteBuffer buffer, boolean last, Consumer<String> matches) {
+        int limit = buffer.limit();
+        int lineStart = 0;
+        int state = 0;
+        boolean matched = false;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                if (matched) {
+                    matches.accept(decode(buffer, lineStart, i));
+                }
+                lineStart = i + 1;
+                state = 0;
+                matched = false;
+            } else if (!matched) {
+                state = transitions[state * ALPHABET + (b & 0xFF)];
+                matched = containsMatch[state] || (prefixMatch[state] && depth[state] == i - lineStart + 1);
+            }
+        }
+        if (!last) {
+            return lineStart;
+        }
+        if (matched) {
+            matches.accept(decode(buffer, lineStart, limit));
+        }
+        return limit;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] line = new byte[to - from];
+        buffer.get(from, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package io.moderne.jenkins.util;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds requests back until the {@link AimdLimiter} has room for them, and feeds it the response latency and status.
+ * A request keeps its permit until its response body has been read or released, as its connection is busy until then.
+ */
+@RequiredArgsConstructor
+public class AimdExchangeFilter implements ExchangeFilterFunction {
+    private final AimdLimiter limiter;
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return permit().flatMap(granted -> {
+            AtomicBoolean held = new AtomicBoolean(true);
+            Runnable release = () -> {
+                if (held.compareAndSet(true, false)) {
+                    limiter.release();
+                }
+            };
+            AtomicBoolean responded = new AtomicBoolean();
+            long start = System.nanoTime();
+            return next.exchange(request)
+                    .doOnNext(response -> {
+                        int status = response.rawStatusCode();
+                        if (status == HttpStatus.TOO_MANY_REQUESTS.value() || status >= 500) {
+                            limiter.onOverload(status + " from " + request.url().getPath());
+                        } else {
+                            limiter.onSuccess(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(e -> limiter.onOverload(e.toString()))
+                    .map(response -> {
+                        responded.set(true);
+                        return response.mutate().body(body -> body.doFinally(signal -> release.run())).build();
+                    })
+                    // failed or cancelled before there was a body to hand the permit to
+                    .doFinally(signal -> {
+                        if (!responded.get()) {
+                            release.run();
+                        }
+                    });
+        });
+    }
+
+    private Mono<Boolean> permit() {
+        return Mono.create(sink -> {
+            long queued = System.nanoTime();
+            Runnable waiter = () -> {
+                FetchMetrics.global().queueWait(limiter.name(), System.nanoTime() - queued);
+                sink.success(true);
+            };
+            limiter.acquire(waiter);
+            sink.onCancel(() -> {
+                if (!limiter.cancel(waiter)) {
+                    limiter.release();
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package io.moderne.jenkins.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Concurrency limit that grows by one for every {@code limit} healthy responses while requests actually queue up
+ * against it, and halves on 429/503 responses, failed connections or when the p95 latency of the last
+ * {@value #WINDOW} responses exceeds {@code healthyLatency}. After halving, further overload signals are ignored for
+ * one {@code healthyLatency}, as they are mostly from requests started under the old limit.
+ */
+@Slf4j
+public class AimdLimiter {
+    private static final int WINDOW = 50;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long healthyLatencyNanos;
+    private final Deque<Runnable> waiters = new ArrayDeque<>();
+    private final long[] latencies = new long[WINDOW];
+    private int latencyCount;
+    private int limit;
+    private int inFlight;
+    private int credits;
+    private long lastDecrease;
+
+    public AimdLimiter(String name, int minLimit, int maxLimit, Duration healthyLatency) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.healthyLatencyNanos = healthyLatency.toNanos();
+        this.limit = minLimit;
+        this.lastDecrease = System.nanoTime() - healthyLatencyNanos;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public synchronized int limit() {
+        return limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inFlight < limit) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs {@code onGranted} now or once a permit frees up, on the thread releasing it.
+     */
+    public void acquire(Runnable onGranted) {
+        synchronized (this) {
+            if (inFlight >= limit) {
+                waiters.add(onGranted);
+                return;
+            }
+            inFlight++;
+        }
+        onGranted.run();
+    }
+
+    /**
+     * @return false if the waiter was already granted its permit, which then has to be released.
+     */
+    public synchronized boolean cancel(Runnable waiter) {
+        return waiters.remove(waiter);
+    }
+
+    public void release() {
+        List<Runnable> granted;
+        synchronized (this) {
+            inFlight--;
+            granted = grant();
+        }
+        granted.forEach(Runnable::run);
+    }
+
+    public void onSuccess(long latencyNanos) {
+        List<Runnable> granted;
+        synchronized (this) {
+            latencies[latencyCount++] = latencyNanos;
+            if (latencyCount == WINDOW) {
+                latencyCount = 0;
+                long p95 = p95();
+                if (p95 > healthyLatencyNanos) {
+                    decrease("p95 latency of " + Duration.ofNanos(p95).toMillis() + "ms");
+                    return;
+                }
+            }
+            // only probe for more when the limit is what holds requests back
+            if (limit < maxLimit && (inFlight >= limit - 1 || !waiters.isEmpty()) && ++credits >= limit) {
+                credits = 0;
+                limit++;
+                log.debug("Raised {} concurrency limit to {}", name, limit);
+            }
+            granted = grant();
+        }
+        granted.forEach(Runnable::run);
+    }
+
+    /**
+     * A 429 or 5xx response, or a request that failed without one.
+     */
+    public synchronized void onOverload(String reason) {
+        decrease(reason);
+    }
+
+    private void decrease(String reason) {
+        long now = System.nanoTime();
+        if (now - lastDecrease < healthyLatencyNanos) {
+            return;
+        }
+        lastDecrease = now;
+        credits = 0;
+        latencyCount = 0;
+        int previous = limit;
+        limit = Math.max(minLimit, limit / 2);
+        if (limit != previous) {
+            log.info("Lowered {} concurrency limit from {} to {} after {}", name, previous, limit, reason);
+        }
+    }
+
+    private List<Runnable> grant() {
+        List<Runnable> granted = new ArrayList<>();
+        while (inFlight < limit && !waiters.isEmpty()) {
+            inFlight++;
+            granted.add(waiters.poll());
+        }
+        return granted;
+    }
+
+    private long p95() {
+        long[] sorted = Arrays.copyOf(latencies, WINDOW);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(WINDOW * 0.95) - 1];
+    }
+}
@@ -0,0 +1,335 @@
+package io.moderne.jenkins.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Completed builds, which never change, kept on disk so they are only fetched from Jenkins once. Builds are appended
+ * to fixed size segment files that are memory-mapped and hold one column per field: job id, build number, timestamp,
+ * duration and result. Job names are kept in {@code jobs.txt}, a job's id being its line number.
+ * <p>
+ * A row only counts once the row count in the segment header includes it, so a crash while appending loses at most
+ * that row. Each job's rows are indexed by build number in memory when the store is opened, as is the time range of
+ * each segment, so looking up a build takes one array access and time range queries only read the timestamp column of
+ * the segments they overlap.
+ */
+@Slf4j
+public class BuildHistoryStore implements Closeable {
+    private static final String[] RESULTS = {"SUCCESS", "UNSTABLE", "FAILURE", "NOT_BUILT", "ABORTED"};
+    private static final byte FAILURE = 2;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // capacity and row count
+    private static final int HEADER_BYTES = 8;
+    private static final int ROW_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES + Byte.BYTES;
+
+    private final Path dir;
+    private final int rowsPerSegment;
+    private final List<String> jobNames = new ArrayList<>();
+    private final Map<String, Integer> jobIds = new HashMap<>();
+    private final List<Rows> jobRows = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+
+    private BuildHistoryStore(Path dir, int rowsPerSegment) {
+        this.dir = dir;
+        this.rowsPerSegment = rowsPerSegment;
+    }
+
+    public static BuildHistoryStore open(Path dir) {
+        return open(dir, 1 << 20);
+    }
+
+    static BuildHistoryStore open(Path dir, int rowsPerSegment) {
+        BuildHistoryStore store = new BuildHistoryStore(dir, rowsPerSegment);
+        try {
+            Files.createDirectories(dir);
+            Path jobs = dir.resolve("jobs.txt");
+            if (Files.exists(jobs)) {
+                for (String name : Files.readAllLines(jobs, StandardCharsets.UTF_8)) {
+                    store.jobIds.put(name, store.jobNames.size());
+                    store.jobNames.add(name);
+                    store.jobRows.add(new Rows());
+                }
+            }
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dir)) {
+                files = list.filter(file -> file.getFileName().toString().matches("builds-\\d+\\.seg")).sorted().toList();
+            }
+            for (Path file : files) {
+                Segment segment = store.map(file);
+                for (int i = 0; i < segment.count(); i++) {
+                    store.jobRows.get(segment.jobId(i)).add(store.segments.size() * rowsPerSegment + i, segment.number(i));
+                    segment.include(segment.timestamp(i));
+                }
+                store.segments.add(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Opened build history of {} builds of {} jobs in {}", store.size(), store.jobNames.size(), dir);
+        return store;
+    }
+
+    public synchronized long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count();
+        }
+        return size;
+    }
+
+    public synchronized boolean contains(String jobName, long buildNumber) {
+        return row(jobName, buildNumber) >= 0;
+    }
+
+    @Nullable
+    public synchronized JenkinsJobBuild build(String jobName, long buildNumber) {
+        int row = row(jobName, buildNumber);
+        return row < 0 ? null : build(row);
+    }
+
+    /**
+     * @return the job's builds, newest first.
+     */
+    public synchronized List<JenkinsJobBuild> builds(String jobName) {
+        Integer jobId = jobIds.get(jobName);
+        if (jobId == null) {
+            return List.of();
+        }
+        Rows rows = jobRows.get(jobId);
+        List<JenkinsJobBuild> builds = new ArrayList<>(rows.size);
+        for (int i = 0; i < rows.size; i++) {
+            builds.add(build(rows.rows[i]));
+        }
+        builds.sort(Comparator.comparingLong(JenkinsJobBuild::buildNumber).reversed());
+        return builds;
+    }
+
+    /**
+     * Stores the build unless it has no result yet or is already stored. A build can have its result while it is still
+     * running, so callers only pass builds that Jenkins no longer reports as building.
+     *
+     * @return whether the build was added.
+     */
+    public synchronized boolean append(JenkinsJobBuild build) {
+        if (build.result() == null || contains(build.jobName(), build.buildNumber())) {
+            return false;
+        }
+        byte result = result(build.result());
+        int jobId = jobId(build.jobName());
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.count() == rowsPerSegment) {
+            try {
+                segment = map(dir.resolve(String.format("builds-%05d.seg", segments.size())));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            segments.add(segment);
+        }
+        int i = segment.count();
+        segment.buffer.putInt(segment.jobIdOffset(i), jobId);
+        segment.buffer.putInt(segment.numberOffset(i), Math.toIntExact(build.buildNumber()));
+        segment.buffer.putLong(segment.timestampOffset(i), build.timestamp());
+        segment.buffer.putLong(segment.durationOffset(i), build.duration());
+        segment.buffer.put(segment.resultOffset(i), result);
+        segment.buffer.putInt(Integer.BYTES, i + 1);
+        segment.include(build.timestamp());
+        jobRows.get(jobId).add((segments.size() - 1) * rowsPerSegment + i, segment.number(i));
+        return true;
+    }
+
+    /**
+     * Total and failed builds per day of those started in {@code [from, to)}, in epoch milliseconds.
+     */
+    public synchronized SortedMap<LocalDate, DailyBuildStats.Day> daily(long from, long to, ZoneOffset offset) {
+        long offsetMillis = offset.getTotalSeconds() * 1000L;
+        long firstDay = Math.floorDiv(from + offsetMillis, DAY_MILLIS);
+        int days = (int) (Math.floorDiv(to - 1 + offsetMillis, DAY_MILLIS) - firstDay + 1);
+        int[] total = new int[Math.max(days, 0)];
+        int[] failed = new int[total.length];
+        for (Segment segment : segments) {
+            if (segment.maxTimestamp < from || segment.minTimestamp >= to) {
+                continue;
+            }
+            for (int i = 0; i < segment.count(); i++) {
+                long timestamp = segment.timestamp(i);
+                if (timestamp >= from && timestamp < to) {
+                    int day = (int) (Math.floorDiv(timestamp + offsetMillis, DAY_MILLIS) - firstDay);
+                    total[day]++;
+                    if (segment.buffer.get(segment.resultOffset(i)) == FAILURE) {
+                        failed[day]++;
+                    }
+                }
+            }
+        }
+        SortedMap<LocalDate, DailyBuildStats.Day> daily = new TreeMap<>();
+        for (int day = 0; day < total.length; day++) {
+            if (total[day] > 0) {
+                daily.put(LocalDate.ofEpochDay(firstDay + day), new DailyBuildStats.Day(total[day], failed[day]));
+            }
+        }
+        return daily;
+    }
+
+    /**
+     * Flushes the segments to disk. Rows are visible to other processes as soon as they are appended.
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    private int row(String jobName, long buildNumber) {
+        Integer jobId = jobIds.get(jobName);
+        if (jobId == null) {
+            return -1;
+        }
+        return buildNumber < 0 || buildNumber > Integer.MAX_VALUE ? -1 : jobRows.get(jobId).row((int) buildNumber);
+    }
+
+    private JenkinsJobBuild build(int row) {
+        Segment segment = segments.get(row / rowsPerSegment);
+        int i = row % rowsPerSegment;
+        return new JenkinsJobBuild(jobNames.get(segment.jobId(i)),
+                segment.number(i),
+                segment.timestamp(i),
+                RESULTS[segment.buffer.get(segment.resultOffset(i))],
+                segment.buffer.getLong(segment.durationOffset(i)));
+    }
+
+    private int jobId(String jobName) {
+        Integer jobId = jobIds.get(jobName);
+        if (jobId != null) {
+            return jobId;
+        }
+        try {
+            // the name is stored before any row refers to it
+            Files.writeString(dir.resolve("jobs.txt"), jobName + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        jobIds.put(jobName, jobNames.size());
+        jobNames.add(jobName);
+        jobRows.add(new Rows());
+        return jobNames.size() - 1;
+    }
+
+    private static byte result(String result) {
+        for (byte code = 0; code < RESULTS.length; code++) {
+            if (RESULTS[code].equals(result)) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("Unknown build result " + result);
+    }
+
+    private Segment map(Path file) throws IOException {
+        boolean created = !Files.exists(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) rowsPerSegment * ROW_BYTES);
+            if (created) {
+                buffer.putInt(0, rowsPerSegment);
+            } else if (buffer.getInt(0) != rowsPerSegment) {
+                throw new IllegalStateException(file + " holds " + buffer.getInt(0) + " builds per segment rather than " + rowsPerSegment);
+            }
+            return new Segment(buffer, rowsPerSegment);
+        }
+    }
+
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        private Segment(MappedByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        int count() {
+            return buffer.getInt(Integer.BYTES);
+        }
+
+        void include(long timestamp) {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        int jobId(int i) {
+            return buffer.getInt(jobIdOffset(i));
+        }
+
+        int number(int i) {
+            return buffer.getInt(numberOffset(i));
+        }
+
+        long timestamp(int i) {
+            return buffer.getLong(timestampOffset(i));
+        }
+
+        int jobIdOffset(int i) {
+            return HEADER_BYTES + i * Integer.BYTES;
+        }
+
+        int numberOffset(int i) {
+            return HEADER_BYTES + capacity * Integer.BYTES + i * Integer.BYTES;
+        }
+
+        int timestampOffset(int i) {
+            return HEADER_BYTES + capacity * 2 * Integer.BYTES + i * Long.BYTES;
+        }
+
+        int durationOffset(int i) {
+            return HEADER_BYTES + capacity * (2 * Integer.BYTES + Long.BYTES) + i * Long.BYTES;
+        }
+
+        int resultOffset(int i) {
+            return HEADER_BYTES + capacity * (2 * Integer.BYTES + 2 * Long.BYTES) + i;
+        }
+    }
+
+    /**
+     * A job's rows, which for millions of builds take a fraction of the memory of boxed ones, and the row of each of
+     * its build numbers, so looking up a build doesn't have to look through the job's rows. Build numbers count up
+     * from 1, so indexing by them wastes little.
+     */
+    private static class Rows {
+        private int[] rows = new int[4];
+        private int size;
+        // row + 1, 0 for build numbers not stored
+        private int[] byNumber = new int[0];
+
+        void add(int row, int number) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+            if (number >= byNumber.length) {
+                byNumber = Arrays.copyOf(byNumber, Math.max(number + 1, byNumber.length * 2));
+            }
+            byNumber[number] = row + 1;
+        }
+
+        int row(int number) {
+            return number < byNumber.length ? byNumber[number] - 1 : -1;
+        }
+    }
+}
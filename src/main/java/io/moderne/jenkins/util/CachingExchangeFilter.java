@@ -0,0 +1,274 @@
+package io.moderne.jenkins.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The WebClient side of {@link HttpCacheSettings}. Bodies are written to disk while they are read and served from
+ * disk in chunks, so caching doesn't hold a response in memory that the client would otherwise stream. GETs are
+ * cached by URL; other requests only when the client names what identifies them in the {@link #CACHE_KEY} request
+ * attribute, e.g. a GraphQL query and its variables.
+ */
+@Slf4j
+public class CachingExchangeFilter implements ExchangeFilterFunction {
+    public static final String CACHE_KEY = CachingExchangeFilter.class.getName() + ".key";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final boolean offline;
+    private final Map<Pattern, Duration> ttls;
+    private final ExchangeStrategies strategies;
+
+    // the sizes of the cached bodies, least recently used first
+    private final LinkedHashMap<String, Long> bodies = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    CachingExchangeFilter(Path dir, long maxBytes, boolean offline, Map<Pattern, Duration> ttls, ExchangeStrategies strategies) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.offline = offline;
+        this.ttls = ttls;
+        this.strategies = strategies;
+        try {
+            Files.createDirectories(dir);
+            List<Path> cached;
+            try (Stream<Path> files = Files.list(dir)) {
+                cached = files.filter(file -> file.getFileName().toString().endsWith(".body"))
+                        .sorted(Comparator.comparing(CachingExchangeFilter::lastUsed))
+                        .toList();
+            }
+            for (Path body : cached) {
+                long bytes = Files.size(body);
+                bodies.put(body.getFileName().toString().replaceFirst("\\.body$", ""), bytes);
+                size += bytes;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String key = key(request);
+        Duration ttl = HttpCacheSettings.ttl(ttls, request.url().getPath());
+        if (key == null || (ttl.isZero() && !offline)) {
+            return offline ? notCached(request) : next.exchange(request);
+        }
+        return Mono.defer(() -> {
+            Entry cached = read(key);
+            if (cached != null && (offline || cached.age().compareTo(ttl) < 0)) {
+                return Mono.just(fromCache(key, cached));
+            }
+            if (offline) {
+                return notCached(request);
+            }
+            return next.exchange(revalidating(request, cached)).flatMap(response -> {
+                if (cached != null && response.rawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+                    Entry refreshed = new Entry(cached.status(), cached.contentType(), cached.etag(), cached.lastModified(), System.currentTimeMillis());
+                    write(key, refreshed);
+                    return response.releaseBody().thenReturn(fromCache(key, refreshed));
+                }
+                if (response.rawStatusCode() / 100 != 2) {
+                    return Mono.just(response);
+                }
+                return Mono.just(storing(key, response));
+            });
+        });
+    }
+
+    @Nullable
+    private static String key(ClientRequest request) {
+        Object key = request.attribute(CACHE_KEY).orElse(null);
+        if (key == null && request.method() != HttpMethod.GET) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((request.method() + " " + request.url() + "\n" + (key == null ? "" : key)).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> Mono<T> notCached(ClientRequest request) {
+        return Mono.error(new IllegalStateException("Offline and not cached: " + request.method() + " " + request.url()));
+    }
+
+    private static ClientRequest revalidating(ClientRequest request, @Nullable Entry cached) {
+        if (cached == null || (cached.etag() == null && cached.lastModified() == null)) {
+            return request;
+        }
+        return ClientRequest.from(request).headers(headers -> {
+            if (cached.etag() != null) {
+                headers.set(HttpHeaders.IF_NONE_MATCH, cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+            }
+        }).build();
+    }
+
+    private ClientResponse fromCache(String key, Entry entry) {
+        Path body = dir.resolve(key + ".body");
+        try {
+            // when it was last used, for eviction by later runs
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (this) {
+            bodies.get(key);
+        }
+        ClientResponse.Builder response = ClientResponse.create(HttpStatus.valueOf(entry.status()), strategies)
+                .body(DataBufferUtils.read(body, DefaultDataBufferFactory.sharedInstance, CHUNK_SIZE));
+        if (entry.contentType() != null) {
+            response.header(HttpHeaders.CONTENT_TYPE, entry.contentType());
+        }
+        return response.build();
+    }
+
+    /**
+     * The body is written to a temporary file as it is read, which only replaces the cached response once the body
+     * has been read completely.
+     */
+    private ClientResponse storing(String key, ClientResponse response) {
+        HttpHeaders headers = response.headers().asHttpHeaders();
+        Entry entry = new Entry(response.rawStatusCode(),
+                headers.getContentType() == null ? null : headers.getContentType().toString(),
+                headers.getETag(),
+                headers.getFirst(HttpHeaders.LAST_MODIFIED),
+                System.currentTimeMillis());
+        return response.mutate().body(body -> Flux.defer(() -> {
+            Path tmp;
+            FileChannel channel;
+            try {
+                tmp = Files.createTempFile(dir, key, ".tmp");
+                channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // committed before the body completes downstream, so the next request already finds it
+            return DataBufferUtils.write(body, channel)
+                    .doOnComplete(() -> {
+                        try {
+                            channel.close();
+                            Files.move(tmp, dir.resolve(key + ".body"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                            write(key, entry);
+                            evict(key, Files.size(dir.resolve(key + ".body")));
+                        } catch (IOException e) {
+                            log.warn("Failed to cache response", e);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            try {
+                                channel.close();
+                                Files.deleteIfExists(tmp);
+                            } catch (IOException e) {
+                                log.warn("Failed to discard partially cached response", e);
+                            }
+                        }
+                    });
+        })).build();
+    }
+
+    @Nullable
+    private Entry read(String key) {
+        Path meta = dir.resolve(key + ".json");
+        if (!Files.exists(meta) || !Files.exists(dir.resolve(key + ".body"))) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(meta.toFile(), Entry.class);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable cache entry {}", meta, e);
+            return null;
+        }
+    }
+
+    private void write(String key, Entry entry) {
+        try {
+            Path tmp = Files.createTempFile(dir, key, ".json.tmp");
+            MAPPER.writeValue(tmp.toFile(), entry);
+            Files.move(tmp, dir.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Accounts for a newly stored body and deletes the least recently used responses until the cache fits in
+     * {@code maxBytes} again. The sizes are kept in memory, so storing a response doesn't have to look at every
+     * file in the cache.
+     */
+    private synchronized void evict(String stored, long bytes) throws IOException {
+        Long replaced = bodies.put(stored, bytes);
+        size += bytes - (replaced == null ? 0 : replaced);
+        for (Iterator<Map.Entry<String, Long>> lru = bodies.entrySet().iterator(); size > maxBytes && lru.hasNext(); ) {
+            Map.Entry<String, Long> body = lru.next();
+            Files.deleteIfExists(dir.resolve(body.getKey() + ".json"));
+            Files.deleteIfExists(dir.resolve(body.getKey() + ".body"));
+            size -= body.getValue();
+            lru.remove();
+            log.debug("Evicted cached response {}", body.getKey());
+        }
+    }
+
+    private static FileTime lastUsed(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param storedAt when the response was fetched or last revalidated, in epoch milliseconds.
+     */
+    record Entry(int status, @Nullable String contentType, @Nullable String etag, @Nullable String lastModified,
+                 long storedAt) {
+
+        Duration age() {
+            return Duration.ofMillis(System.currentTimeMillis() - storedAt);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.moderne.jenkins.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-day build totals as printed by {@code ingest-report.groovy}, kept in the same CSV format together with the
+ * watermark: the first day that wasn't final yet when it was counted and has to be counted again.
+ */
+public class DailyBuildStats {
+    static final String HEADER = "date, total, failed";
+    static final String WATERMARK = "# watermark ";
+
+    /**
+     * Before any Jenkins build, so the first incremental run counts everything.
+     */
+    static final LocalDate BEGINNING = LocalDate.EPOCH;
+
+    private final Map<LocalDate, Day> days = new TreeMap<>();
+    private LocalDate watermark = BEGINNING;
+
+    public static DailyBuildStats load(Path file) {
+        DailyBuildStats stats = new DailyBuildStats();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                stats.merge(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return stats;
+    }
+
+    public LocalDate watermark() {
+        return watermark;
+    }
+
+    public Map<LocalDate, Day> days() {
+        return days;
+    }
+
+    /**
+     * Takes the counts of every day in the report, which replace what was stored for them since a recount covers
+     * the whole day, and moves the watermark to the one the report ends with.
+     */
+    public void merge(String report) {
+        try {
+            merge(new StringReader(report));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void merge(Reader report) throws IOException {
+        BufferedReader lines = new BufferedReader(report);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isBlank() || line.equals(HEADER)) {
+                continue;
+            }
+            if (line.startsWith(WATERMARK)) {
+                watermark = LocalDate.parse(line.substring(WATERMARK.length()).trim());
+                continue;
+            }
+            String[] columns = line.split(",");
+            if (columns.length != 3) {
+                throw new IllegalArgumentException("Unexpected build statistics line: " + line);
+            }
+            days.put(LocalDate.parse(columns[0].trim()), new Day(Integer.parseInt(columns[1].trim()), Integer.parseInt(columns[2].trim())));
+        }
+    }
+
+    public void print(PrintStream out) {
+        out.println(HEADER);
+        days.forEach((date, day) -> out.println(date + ", " + day.total() + ", " + day.failed()));
+    }
+
+    public void save(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (PrintStream out = new PrintStream(Files.newOutputStream(tmp))) {
+            print(out);
+            out.println(WATERMARK + watermark);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record Day(int total, int failed) {
+    }
+}
@@ -0,0 +1,287 @@
+package io.moderne.jenkins.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, status codes, bytes received, retries, queue wait and requests in flight of every fetch, tagged by
+ * {@link #endpoint(String) endpoint}, for both the OkHttp and the WebClient clients. Written in the Prometheus text
+ * format at the end of a run.
+ */
+@Slf4j
+public class FetchMetrics {
+    private static final FetchMetrics GLOBAL = new FetchMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+
+    private final PrometheusMeterRegistry registry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public FetchMetrics(PrometheusMeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static FetchMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Writes the global metrics to {@code -DmetricsFile} (default {@code fetch-metrics.prom}).
+     */
+    public static void writeFromSystemProperties() {
+        GLOBAL.write(Paths.get(System.getProperty("metricsFile", "fetch-metrics.prom")));
+    }
+
+    public static String endpoint(String path) {
+        if (path.endsWith("/scriptText")) {
+            return "scriptText";
+        } else if (path.endsWith("/consoleText")) {
+            return "consoleText";
+        } else if (path.endsWith("/logText/progressiveText")) {
+            return "progressiveText";
+        } else if (path.startsWith("/crumbIssuer/")) {
+            return "crumb";
+        } else if (path.endsWith("/graphql")) {
+            return "graphql";
+        } else if (path.matches("/job/[^/]+/api/json")) {
+            return "job list";
+        } else if (path.matches("/job/[^/]+/job/[^/]+/api/json")) {
+            return "job";
+        } else if (path.matches("/job/[^/]+/job/[^/]+/\\d+/api/json")) {
+            return "build";
+        }
+        return "other";
+    }
+
+    /**
+     * Starts timing a request, which counts as in flight until {@link Fetch#received} is called with the size of
+     * its body or {@link Fetch#failed}.
+     */
+    private Fetch start(String endpoint) {
+        inFlight(endpoint).incrementAndGet();
+        return new Fetch(endpoint, System.nanoTime());
+    }
+
+    /**
+     * Counts and logs the retries of a reactive request, which would otherwise go unnoticed.
+     */
+    public RetryBackoffSpec counted(RetryBackoffSpec retry, String endpoint) {
+        return retry.doBeforeRetry(signal -> {
+            log.warn("Retrying {} request after {}", endpoint, signal.failure().toString());
+            retry(endpoint, signal.failure().getClass().getSimpleName());
+        });
+    }
+
+    public void retry(String endpoint, String cause) {
+        Counter.builder("fetch.retries")
+                .tag("endpoint", endpoint)
+                .tag("cause", cause)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @param outcome {@code sent} for every hedged request and {@code won} when its response came first.
+     */
+    public void hedge(String endpoint, String outcome) {
+        Counter.builder("fetch.hedges")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @param queue the host or client the request was waiting for a concurrency permit of.
+     */
+    public void queueWait(String queue, long nanos) {
+        Timer.builder("fetch.queue.wait")
+                .tag("queue", queue)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private AtomicInteger inFlight(String endpoint) {
+        return inFlight.computeIfAbsent(endpoint, e -> {
+            AtomicInteger requests = new AtomicInteger();
+            Gauge.builder("fetch.requests.active", requests, AtomicInteger::get)
+                    .tag("endpoint", e)
+                    .register(registry);
+            return requests;
+        });
+    }
+
+    public Interceptor okHttpInterceptor() {
+        return chain -> {
+            Fetch fetch = start(endpoint(chain.request().url().encodedPath()));
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException | RuntimeException e) {
+                fetch.failed(e);
+                throw e;
+            }
+            fetch.responded(response.code());
+            ResponseBody body = response.body();
+            if (body == null) {
+                fetch.received(0);
+                return response;
+            }
+            return response.newBuilder().body(new CountingBody(body, fetch)).build();
+        };
+    }
+
+    public ExchangeFilterFunction exchangeFilter() {
+        return (clientRequest, next) -> {
+            Fetch fetch = start(endpoint(clientRequest.url().getPath()));
+            return next.exchange(clientRequest)
+                    .doOnError(fetch::failed)
+                    .doOnCancel(() -> fetch.received(0))
+                    .map(response -> {
+                        fetch.responded(response.rawStatusCode());
+                        AtomicLong bytes = new AtomicLong();
+                        return response.mutate().body(body -> body
+                                .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                                .doFinally(signal -> fetch.received(bytes.get()))).build();
+                    });
+        };
+    }
+
+    public void write(Path file) {
+        try {
+            Files.writeString(file, registry.scrape());
+            log.info("Wrote fetch metrics to {}", file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class Fetch {
+        private final String endpoint;
+        private final long start;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Fetch(String endpoint, long start) {
+            this.endpoint = endpoint;
+            this.start = start;
+        }
+
+        /**
+         * Records the time to the response headers.
+         */
+        public void responded(int status) {
+            timer(Integer.toString(status)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        public void failed(Throwable e) {
+            if (finish()) {
+                timer(e.getClass().getSimpleName()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void received(long bytes) {
+            if (finish()) {
+                DistributionSummary.builder("fetch.response.bytes")
+                        .baseUnit("bytes")
+                        .tag("endpoint", endpoint)
+                        .register(registry)
+                        .record(bytes);
+            }
+        }
+
+        private Timer timer(String status) {
+            return Timer.builder("fetch.requests")
+                    .tag("endpoint", endpoint)
+                    .tag("status", status)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry);
+        }
+
+        private boolean finish() {
+            if (done.compareAndSet(false, true)) {
+                inFlight(endpoint).decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Counts the bytes read from a response body, reporting them once it is closed.
+     */
+    private static class CountingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final Fetch fetch;
+        @Nullable
+        private BufferedSource source;
+
+        private CountingBody(ResponseBody delegate, Fetch fetch) {
+            this.delegate = delegate;
+            this.fetch = fetch;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NotNull
+        @Override
+        public synchronized BufferedSource source() {
+            if (source == null) {
+                AtomicLong bytes = new AtomicLong();
+                source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+                        long read = super.read(sink, byteCount);
+                        if (read > 0) {
+                            bytes.addAndGet(read);
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        fetch.received(bytes.get());
+                        super.close();
+                    }
+                });
+            }
+            return source;
+        }
+    }
+}
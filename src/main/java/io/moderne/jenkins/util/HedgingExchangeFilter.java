@@ -0,0 +1,158 @@
+package io.moderne.jenkins.util;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Sends a second copy of a GET that hasn't been answered within the {@code percentile} latency of the previous ones,
+ * and takes whichever response arrives first, so a few slow requests don't hold up a whole batch. Hedges are paid
+ * for from a token bucket that every request adds {@code budget} tokens to, so they add at most that fraction of
+ * requests to the server's load.
+ * <p>
+ * Latencies, and the wait before hedging, count from when a request is sent rather than from when it was made, so
+ * time spent waiting for a concurrency permit neither inflates the percentile nor triggers hedges. That moment is
+ * taken by {@link #onTheWire()}, which has to be registered after the filters that hold requests back.
+ */
+public class HedgingExchangeFilter implements ExchangeFilterFunction {
+    private static final String ATTEMPT = HedgingExchangeFilter.class.getName() + ".attempt";
+    private static final int WINDOW = 1024;
+    private static final int MIN_SAMPLES = 32;
+    private static final double MAX_TOKENS = 10;
+
+    private final Pattern paths;
+    private final double percentile;
+    private final double budget;
+
+    private final long[] latencies = new long[WINDOW];
+    private long samples;
+    private long delayNanos = Long.MAX_VALUE;
+    private double tokens;
+
+    /**
+     * @param paths      the URL paths of idempotent requests that may be hedged.
+     * @param percentile of response latency after which a request is hedged, e.g. 0.95.
+     * @param budget     hedges per request, e.g. 0.05 for at most 5% more requests.
+     */
+    public HedgingExchangeFilter(Pattern paths, double percentile, double budget) {
+        this.paths = paths;
+        this.percentile = percentile;
+        this.budget = budget;
+    }
+
+    public static HedgingExchangeFilter fromSystemProperties(String paths) {
+        return new HedgingExchangeFilter(Pattern.compile(paths),
+                Double.parseDouble(System.getProperty("hedgePercentile", "0.95")),
+                Double.parseDouble(System.getProperty("hedgeBudget", "0.05")));
+    }
+
+    /**
+     * Notes when the requests of this filter are sent.
+     */
+    public ExchangeFilterFunction onTheWire() {
+        return (request, next) -> Mono.defer(() -> {
+            request.attribute(ATTEMPT).ifPresent(attempt -> ((Attempt) attempt).sent());
+            return next.exchange(request);
+        });
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (request.method() != HttpMethod.GET || !paths.matcher(request.url().getPath()).matches()) {
+            return next.exchange(request);
+        }
+        Duration delay = deposit();
+        AtomicBoolean answered = new AtomicBoolean();
+        Attempt first = new Attempt();
+        Mono<ClientResponse> primary = exchange(request, next, first, answered);
+        if (delay == null) {
+            return primary;
+        }
+        String endpoint = FetchMetrics.endpoint(request.url().getPath());
+        Mono<ClientResponse> hedge = first.sent.asMono()
+                .then(Mono.delay(delay))
+                .flatMap(tick -> {
+                    if (!withdraw()) {
+                        return Mono.never();
+                    }
+                    FetchMetrics.global().hedge(endpoint, "sent");
+                    return exchange(request, next, new Attempt(), answered)
+                            .doOnNext(response -> FetchMetrics.global().hedge(endpoint, "won"))
+                            // only the primary request's failure counts
+                            .onErrorResume(e -> Mono.never());
+                });
+        // the slower of the two is cancelled
+        return Mono.firstWithSignal(primary, hedge);
+    }
+
+    /**
+     * Only the first of the two responses is handed on. Should the other arrive too before it is cancelled, its body
+     * is released, as nothing else would.
+     */
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, Attempt attempt, AtomicBoolean answered) {
+        return next.exchange(ClientRequest.from(request).attribute(ATTEMPT, attempt).build())
+                .doOnNext(response -> attempt.done())
+                // the loser counts with the time it took so far, leaving slow requests out would lower the percentile
+                .doOnCancel(attempt::done)
+                .flatMap(response -> answered.compareAndSet(false, true) ?
+                        Mono.just(response) :
+                        response.releaseBody().then(Mono.never()));
+    }
+
+    /**
+     * Adds the request's share of the hedging budget.
+     *
+     * @return how long to wait before hedging the request, or null while there are too few latencies to tell.
+     */
+    @Nullable
+    private synchronized Duration deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+        return samples < MIN_SAMPLES ? null : Duration.ofNanos(delayNanos);
+    }
+
+    private synchronized boolean withdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private synchronized void record(long nanos) {
+        latencies[(int) (samples++ % WINDOW)] = nanos;
+        // sorting the window for every response would cost more than the percentile moves
+        if (samples >= MIN_SAMPLES && samples % MIN_SAMPLES == 0) {
+            long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, WINDOW));
+            Arrays.sort(sorted);
+            delayNanos = sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * sorted.length))];
+        }
+    }
+
+    private class Attempt {
+        private final Sinks.Empty<Void> sent = Sinks.empty();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile long sentAt;
+
+        void sent() {
+            sentAt = System.nanoTime();
+            sent.tryEmitEmpty();
+        }
+
+        void done() {
+            long at = sentAt;
+            if (at != 0 && recorded.compareAndSet(false, true)) {
+                record(System.nanoTime() - at);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.moderne.jenkins.util;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An on-disk cache of the responses of production services, so reports can be rerun without fetching everything
+ * again. Which responses are cached, and for how long, is configured per endpoint by the clients as regular
+ * expressions matched against the URL path. Responses that are stale but carry an {@code ETag} or
+ * {@code Last-Modified} header are revalidated rather than fetched again.
+ *
+ * @param dir      where OkHttp and WebClient responses are cached, in separate subdirectories.
+ * @param maxBytes size of each of the two caches, beyond which the least recently used responses are evicted.
+ * @param offline  serve every WebClient request from the cache, however old, and fail the ones that aren't cached.
+ */
+public record HttpCacheSettings(Path dir, long maxBytes, boolean offline) {
+
+    /**
+     * @return null unless {@code -DhttpCache=true} or {@code -DhttpCacheOffline=true}.
+     */
+    @Nullable
+    public static HttpCacheSettings fromSystemProperties() {
+        boolean offline = Boolean.getBoolean("httpCacheOffline");
+        if (!offline && !Boolean.getBoolean("httpCache")) {
+            return null;
+        }
+        return new HttpCacheSettings(
+                Paths.get(System.getProperty("httpCacheDir", ".http-cache")),
+                Long.getLong("httpCacheMaxMb", 512) * 1024 * 1024,
+                offline
+        );
+    }
+
+    /**
+     * Adds OkHttp's cache, which does the revalidation and eviction, and makes responses of the given endpoints
+     * cacheable for their TTL, whatever caching headers the server sent. Not available offline: the OkHttp clients
+     * list builds by POSTing a script to {@code /scriptText} with a fresh crumb, and OkHttp never caches POSTs.
+     */
+    public OkHttpClient.Builder apply(OkHttpClient.Builder builder, Map<String, Duration> ttls) {
+        if (offline) {
+            throw new IllegalArgumentException("-DhttpCacheOffline=true can't list builds, they are listed by POSTs to /scriptText that " +
+                                               "OkHttp doesn't cache. Use -DhttpCache=true instead");
+        }
+        Map<Pattern, Duration> patterns = compile(ttls);
+        builder.cache(new Cache(dir.resolve("okhttp").toFile(), maxBytes))
+                .addNetworkInterceptor(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    Duration ttl = ttl(patterns, chain.request().url().encodedPath());
+                    if (ttl.isZero()) {
+                        return response;
+                    }
+                    return response.newBuilder()
+                            .removeHeader("Pragma")
+                            .removeHeader("Expires")
+                            .header("Cache-Control", "max-age=" + ttl.toSeconds())
+                            .build();
+                });
+        return builder;
+    }
+
+    public CachingExchangeFilter filter(String name, ExchangeStrategies strategies, Map<String, Duration> ttls) {
+        return new CachingExchangeFilter(dir.resolve("webclient").resolve(name), maxBytes, offline, compile(ttls), strategies);
+    }
+
+    static Duration ttl(Map<Pattern, Duration> ttls, String path) {
+        for (Map.Entry<Pattern, Duration> ttl : ttls.entrySet()) {
+            if (ttl.getKey().matcher(path).matches()) {
+                return ttl.getValue();
+            }
+        }
+        return Duration.ZERO;
+    }
+
+    private static Map<Pattern, Duration> compile(Map<String, Duration> ttls) {
+        Map<Pattern, Duration> compiled = new LinkedHashMap<>();
+        ttls.forEach((path, ttl) -> compiled.put(Pattern.compile(path), ttl));
+        return compiled;
+    }
+}
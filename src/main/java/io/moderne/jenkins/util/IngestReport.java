@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
@@ -19,6 +20,7 @@ public class IngestReport {
     private final OkHttpClient client;
     private final HttpUrl url;
     private final Path script;
+    private final Path statsFile;
 
     public static void main(String[] args) {
         String base = System.getProperty("url", "https://jenkins.moderne.ninja");
@@ -29,8 +31,14 @@ public class IngestReport {
                 .connectTimeout(1, TimeUnit.MINUTES)
                 .callTimeout(2, TimeUnit.MINUTES)
                 .readTimeout(5, TimeUnit.MINUTES)
+                .addNetworkInterceptor(FetchMetrics.global().okHttpInterceptor())
                 .build();
-        new IngestReport(okHttpClient, url, groovyScript).run(args);
+        Path statsFile = Boolean.getBoolean("incremental") ? Paths.get(System.getProperty("statsFile", "jenkins-build-stats.csv")) : null;
+        try {
+            new IngestReport(okHttpClient, url, groovyScript, statsFile).run(args);
+        } finally {
+            FetchMetrics.writeFromSystemProperties();
+        }
     }
 
     private String getCrumb(OkHttpClient client, String credential) {
@@ -52,6 +60,12 @@ public class IngestReport {
     public void run(String[] args) {
         try {
             String scriptText = String.join("\n", Files.readAllLines(script));
+            DailyBuildStats stats = null;
+            if (statsFile != null) {
+                stats = DailyBuildStats.load(statsFile);
+                log.info("Counting builds since {}", stats.watermark());
+                scriptText = withWatermark(scriptText, stats.watermark());
+            }
             String basicCredential = Credentials.basic("greg@moderne.io", "11f8c789ae3574b09a6bfbbdfb157900e4");
             String crumb = getCrumb(client, basicCredential);
             Call call = client.newCall(new Request.Builder()
@@ -65,10 +79,27 @@ public class IngestReport {
             try (Response response = call.execute()) {
                 ResponseBody body = response.body();
                 assert body != null;
-                System.out.println(body.string());
+                if (stats == null) {
+                    System.out.println(body.string());
+                } else {
+                    if (!response.isSuccessful()) {
+                        throw new IllegalStateException("Unexpected status " + response.code() + " running " + script);
+                    }
+                    stats.merge(body.string());
+                    stats.save(statsFile);
+                    stats.print(System.out);
+                }
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private String withWatermark(String scriptText, LocalDate watermark) {
+        String placeholder = "def watermark = null";
+        if (!scriptText.contains(placeholder)) {
+            throw new IllegalStateException(script + " has no '" + placeholder + "' line to set the watermark on");
+        }
+        return scriptText.replace(placeholder, "def watermark = '" + watermark + "'");
+    }
 }
@@ -7,18 +7,21 @@ import reactor.core.publisher.Mono;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
 public class JLRepoReport {
 
     public static void main(String[] args) {
-        new JLRepoReport(new ModerneSaasRepositoryFetcher(), new JenkinsJobFetcher()).run();
+        try {
+            new JLRepoReport(new ModerneSaasRepositoryFetcher(), new JenkinsJobFetcher()).run();
+        } finally {
+            FetchMetrics.writeFromSystemProperties();
+        }
     }
 
     private final ModerneSaasRepositoryFetcher moderneSaasRepositoryFetcher;
@@ -27,25 +30,25 @@ public class JLRepoReport {
     @SuppressWarnings("unchecked")
     public void run() {
 
-        Mono<List<JenkinsJobSummary>> jenkinsJobs = jenkinsJobFetcher.fetchJenkinsJobSummaries().collectList();
+        Mono<RepositoryIndex> index = RepositoryIndex.cached(Paths.get(System.getProperty("indexSnapshot", "repository-index.json")),
+                Duration.ofMinutes(Long.getLong("indexMaxAgeMinutes", 60)), () -> {
+                    Mono<List<JenkinsJobSummary>> jenkinsJobs = jenkinsJobFetcher.fetchJenkinsJobSummaries().collectList();
+
+                    Mono<List<ModerneSaasRepository>> orgRepos = Boolean.getBoolean("paginated") ?
+                            moderneSaasRepositoryFetcher.fetchRepositoriesPaginated(Integer.getInteger("pageSize", 500), Integer.getInteger("orgConcurrency", 8)).collectList() :
+                            moderneSaasRepositoryFetcher.fetchRepositories(null);
 
-        Mono<List<ModerneSaasRepository>> orgRepos = moderneSaasRepositoryFetcher.fetchRepositories(null);
+                    return Mono.zip(orgRepos, jenkinsJobs, RepositoryIndex::of);
+                });
 
-        Mono.zip(jenkinsJobs, orgRepos).doOnNext(t -> {
-            List<JenkinsJobSummary> jenkinsJobSummaryList = t.getT1();
-            List<ModerneSaasRepository> orgRepoList = t.getT2();
-            Map<String, JenkinsJobSummary> jenkinsJobMap = jenkinsJobSummaryList.stream().collect(
-                    Collectors.toMap(
-                            jenkinsJobSummary -> jenkinsJobSummary.name().replaceFirst("_", "/"),
-                            Function.identity()
-                    ));
-            analyze("tmp-info-disc.txt", orgRepoList, jenkinsJobMap);
-            analyze("zip_slip.txt", orgRepoList, jenkinsJobMap);
+        index.doOnNext(repositoryIndex -> {
+            analyze("tmp-info-disc.txt", repositoryIndex);
+            analyze("zip_slip.txt", repositoryIndex);
         }).block();
 
     }
 
-    private void analyze(String filename, List<ModerneSaasRepository> orgRepoList, Map<String, JenkinsJobSummary> jenkinsJobMap) {
+    private void analyze(String filename, RepositoryIndex index) {
         try (BufferedWriter writer = Files.newBufferedWriter(Path.of(filename + ".csv"))) {
             writer.write("repo, public_repo_exists, jenkins_job_status\n");
             InputStream resourceAsStream = getClass().getResourceAsStream("/jl/" + filename);
@@ -54,9 +57,9 @@ public class JLRepoReport {
                 while ((repo = reader.readLine()) != null) {
                     writer.write(repo + ", ");
                     String orgRepoName = repo.substring("https://github.com".length() + 1);
-                    ModerneSaasRepository moderneRepo = orgRepoList.stream().filter(orgRepo -> orgRepo.path().equals(orgRepoName)).findFirst().orElse(null);
+                    ModerneSaasRepository moderneRepo = index.repository(orgRepoName);
                     writer.write(Boolean.toString(moderneRepo != null) + ", ");
-                    JenkinsJobSummary jenkinsJobSummary = jenkinsJobMap.get(orgRepoName);
+                    JenkinsJobSummary jenkinsJobSummary = index.job(orgRepoName);
                     writer.write(jenkinsJobSummary == null ? "not found" : jenkinsJobSummary.color());
                     writer.write("\n");
                 }
@@ -1,4 +1,4 @@
 package io.moderne.jenkins.util;
 
-public record JenkinsJobBuild(String jobName, long buildNumber, long timestamp, String result) {
+public record JenkinsJobBuild(String jobName, long buildNumber, long timestamp, String result, long duration) {
 }
@@ -2,7 +2,9 @@ package io.moderne.jenkins.util;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.lang.Nullable;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
@@ -11,7 +13,9 @@ import reactor.netty.http.client.HttpClient;
 import reactor.netty.resources.ConnectionProvider;
 import reactor.util.retry.Retry;
 
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -20,40 +24,84 @@ import java.util.Map;
 public class JenkinsJobFetcher {
 
     private final WebClient webClient;
+    private final StreamingJsonDecoder<JenkinsJobSummary> jobSummaryDecoder = new StreamingJsonDecoder<>(JenkinsJobSummary.class, "jobs[]");
+    private final AimdLimiter limiter;
+
+    @Nullable
+    private final BuildHistoryStore history;
 
     public JenkinsJobFetcher() {
+        this(null);
+    }
+
+    /**
+     * @param history where completed builds are kept, so they are only fetched once.
+     */
+    public JenkinsJobFetcher(@Nullable BuildHistoryStore history) {
+        this("https://jenkins.moderne.ninja", history);
+    }
+
+    JenkinsJobFetcher(String baseUrl, @Nullable BuildHistoryStore history) {
+        this.history = history;
+        int maxConcurrency = Integer.getInteger("maxConcurrency", 100);
+        this.limiter = new AimdLimiter("jenkins.moderne.ninja",
+                Integer.getInteger("minConcurrency", 2),
+                maxConcurrency,
+                Duration.ofMillis(Long.getLong("healthyLatencyMs", 2000)));
         final int size = 16 * 1024 * 1024;
         final ExchangeStrategies strategies = ExchangeStrategies.builder()
                 .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(size))
                 .build();
         final ConnectionProvider connectionProvider = ConnectionProvider.builder("myConnectionPool")
-                .maxConnections(100)
-                .pendingAcquireMaxCount(Integer.MAX_VALUE)
+                // requests only ask for a connection once they have a permit
+                .maxConnections(maxConcurrency)
+                .pendingAcquireMaxCount(maxConcurrency)
                 .build();
         ReactorClientHttpConnector clientHttpConnector = new ReactorClientHttpConnector(HttpClient.create(connectionProvider));
+        HttpCacheSettings cache = HttpCacheSettings.fromSystemProperties();
         webClient = WebClient.builder()
                 .exchangeStrategies(strategies)
                 .clientConnector(clientHttpConnector)
-                .baseUrl("https://jenkins.moderne.ninja")
+                // cache hits don't take a permit
+                .filters(filters -> {
+                    if (cache != null) {
+                        filters.add(cache.filter("jenkins", strategies, Map.of(
+                                "/job/ingest/api/json", Duration.ofMinutes(15),
+                                "/job/ingest/job/[^/]+/(\\d+/)?api/json", Duration.ofMinutes(5))));
+                    }
+                    // hedges take a permit of their own, but are timed from when they have one
+                    HedgingExchangeFilter hedging = Boolean.getBoolean("hedge") ?
+                            HedgingExchangeFilter.fromSystemProperties("/job/ingest/job/[^/]+/(\\d+/)?api/json") : null;
+                    if (hedging != null) {
+                        filters.add(hedging);
+                    }
+                    filters.add(new AimdExchangeFilter(limiter));
+                    if (hedging != null) {
+                        filters.add(hedging.onTheWire());
+                    }
+                    filters.add(FetchMetrics.global().exchangeFilter());
+                })
+                .baseUrl(baseUrl)
                 .defaultHeaders(headers -> headers.setBasicAuth("greg@moderne.io", "1150e72a691ea747e11824c7e9672563e3"))
                 .build();
     }
 
+    /**
+     * How many requests may currently be in flight against Jenkins.
+     */
+    public int concurrencyLimit() {
+        return limiter.limit();
+    }
 
-
+    /**
+     * Summaries are emitted while the job list is still downloading, the list is never held in memory as a whole.
+     */
     public Flux<JenkinsJobSummary> fetchJenkinsJobSummaries() {
-        return webClient.get()
-                .uri("/job/ingest/api/json?tree=jobs[name,color]")
-                .retrieve().bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
-                }).flatMapMany(map -> {
-                    List<Map<String, Object>> jobs = (List<Map<String, Object>>) map.get("jobs");
-                    List<JenkinsJobSummary> jenkinsJobSummaryList = new ArrayList<>();
-                    for (Map<String, Object> job : jobs) {
-                        jenkinsJobSummaryList.add(new JenkinsJobSummary((String) job.get("name"), (String) job.get("color")));
-                    }
-                    return Flux.fromIterable(jenkinsJobSummaryList);
-                })
-                .retryWhen(Retry.backoff(10, Duration.ofSeconds(1)));
+        return jobSummaryDecoder.decode(() -> webClient.get()
+                        .uri("/job/ingest/api/json?tree=jobs[name,color]")
+                        .retrieve().bodyToFlux(DataBuffer.class),
+                JenkinsJobSummary::name,
+                FetchMetrics.global().counted(Retry.backoff(10, Duration.ofSeconds(1)), "job list"));
     }
 
     @SuppressWarnings("unchecked")
@@ -74,35 +122,135 @@ public class JenkinsJobFetcher {
                     }
                     return new JenkinsJob((String) map.get("name"), (String) map.get("color"), buildNumbers);
                 })
-                .retryWhen(Retry.backoff(10, Duration.ofSeconds(1)));
+                .retryWhen(FetchMetrics.global().counted(Retry.backoff(10, Duration.ofSeconds(1)), "job"));
     }
 
     public Mono<JenkinsJobBuild> fetchJenkinsJobBuild(String jobName, long buildNumber) {
+        return Mono.defer(() -> {
+            JenkinsJobBuild stored = history == null ? null : history.build(jobName, buildNumber);
+            if (stored != null) {
+                return Mono.just(stored);
+            }
+            return webClient.get()
+                    .uri("/job/ingest/job/{jobName}/{buildNumber}/api/json?tree=number,timestamp,result,duration,building", jobName, buildNumber)
+                    .retrieve().bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
+                    }).map(map -> {
+                        JenkinsJobBuild build = toBuild(jobName, map);
+                        store(build, map.get("building"));
+                        return build;
+                    })
+                    .retryWhen(FetchMetrics.global().counted(Retry.backoff(10, Duration.ofSeconds(1)), "build"));
+        });
+    }
+
+    /**
+     * Every job with its latest {@code buildsPerJob} builds, fetched {@code jobsPerPage} jobs at a time with a
+     * {@code tree} range query rather than one request per job and build. Pages are fetched one after the other,
+     * a page shorter than {@code jobsPerPage} being the last.
+     */
+    public Flux<JenkinsJobHistory> fetchJenkinsJobHistories(int jobsPerPage, int buildsPerJob) {
+        return fetchJenkinsJobHistories(0, jobsPerPage, buildsPerJob);
+    }
+
+    private Flux<JenkinsJobHistory> fetchJenkinsJobHistories(int from, int jobsPerPage, int buildsPerJob) {
+        return fetchJenkinsJobHistoryPage(from, from + jobsPerPage, buildsPerJob).flatMapMany(page -> {
+            Flux<JenkinsJobHistory> jobs = Flux.fromIterable(page);
+            if (page.size() < jobsPerPage) {
+                return jobs;
+            }
+            return jobs.concatWith(Flux.defer(() -> fetchJenkinsJobHistories(from + jobsPerPage, jobsPerPage, buildsPerJob)));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<List<JenkinsJobHistory>> fetchJenkinsJobHistoryPage(int from, int to, int buildsPerJob) {
+        // ranges are {from,to} with to exclusive; the braces must not be taken for URI template variables
+        String tree = "jobs[name,color,builds[number,timestamp,result,duration,building]{0," + buildsPerJob + "}]{" + from + "," + to + "}";
         return webClient.get()
-                .uri("/job/ingest/job/{jobName}/{buildNumber}/api/json?tree=number,timestamp,result", jobName, buildNumber)
+                .uri(uriBuilder -> uriBuilder.path("/job/ingest/api/json").queryParam("tree", "{tree}").build(tree))
                 .retrieve().bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
                 }).map(map -> {
-                    Object numberObj = map.get("number");
-                    Long number = null;
-                    if (numberObj instanceof Integer) {
-                        number = ((Integer) numberObj).longValue();
-                    } else {
-                        number = (Long) numberObj;
-                    }
-                    Object timestampObj = map.get("timestamp");
-                    Long timestamp = null;
-                    if (timestampObj instanceof Integer) {
-                        timestamp = ((Integer) timestampObj).longValue();
-                    } else {
-                        timestamp = (Long) timestampObj;
+                    List<Map<String, Object>> jobs = (List<Map<String, Object>>) map.get("jobs");
+                    List<JenkinsJobHistory> page = new ArrayList<>(jobs.size());
+                    for (Map<String, Object> job : jobs) {
+                        String name = (String) job.get("name");
+                        List<Map<String, Object>> builds = (List<Map<String, Object>>) job.get("builds");
+                        List<JenkinsJobBuild> history = new ArrayList<>();
+                        if (builds != null) {
+                            for (Map<String, Object> build : builds) {
+                                JenkinsJobBuild jobBuild = toBuild(name, build);
+                                store(jobBuild, build.get("building"));
+                                history.add(jobBuild);
+                            }
+                        }
+                        page.add(new JenkinsJobHistory(name, (String) job.get("color"), history));
                     }
-                    return new JenkinsJobBuild(jobName, number, timestamp, (String) map.get("result"));
+                    log.debug("Fetched jobs {} to {}", from, from + page.size());
+                    return page;
                 })
-                .retryWhen(Retry.backoff(10, Duration.ofSeconds(1)));
+                .retryWhen(FetchMetrics.global().counted(Retry.backoff(10, Duration.ofSeconds(1)), "job list"));
+    }
+
+    /**
+     * Jenkins sets a build's result before it is done, while post-build steps may still change it, so only builds
+     * that are no longer building are stored.
+     */
+    private void store(JenkinsJobBuild build, @Nullable Object building) {
+        if (history != null && Boolean.FALSE.equals(building)) {
+            history.append(build);
+        }
+    }
+
+    private static JenkinsJobBuild toBuild(String jobName, Map<String, Object> build) {
+        return new JenkinsJobBuild(jobName, toLong(build.get("number")), toLong(build.get("timestamp")),
+                (String) build.get("result"), toLong(build.get("duration")));
+    }
+
+    /**
+     * Jackson maps JSON numbers to Integer or Long depending on their size.
+     */
+    private static long toLong(Object number) {
+        return number == null ? 0 : ((Number) number).longValue();
     }
 
     public static void main(String[] args) {
-        new JenkinsJobFetcher().printFailedJobs().block();
+        int builds = Integer.getInteger("builds", 0);
+        String historyDir = System.getProperty("buildHistory");
+        BuildHistoryStore history = historyDir == null ? null : BuildHistoryStore.open(Paths.get(historyDir));
+        JenkinsJobFetcher fetcher = new JenkinsJobFetcher(history);
+        try {
+            (builds > 0 ? fetcher.printFailedBuilds(Integer.getInteger("jobsPerPage", 500), builds) : fetcher.printFailedJobs()).block();
+            if (history != null) {
+                printDailyBuilds(history, Integer.getInteger("days", 30));
+            }
+        } finally {
+            if (history != null) {
+                history.close();
+            }
+            FetchMetrics.writeFromSystemProperties();
+        }
+    }
+
+    /**
+     * From the build history alone, without asking Jenkins.
+     */
+    private static void printDailyBuilds(BuildHistoryStore history, int days) {
+        long to = System.currentTimeMillis();
+        System.out.println(DailyBuildStats.HEADER);
+        history.daily(to - Duration.ofDays(days).toMillis(), to, ZoneOffset.UTC)
+                .forEach((date, day) -> System.out.println(date + ", " + day.total() + ", " + day.failed()));
+    }
+
+    private Mono<Void> printFailedBuilds(int jobsPerPage, int builds) {
+        return fetchJenkinsJobHistories(jobsPerPage, builds)
+                .doOnError(t -> log.error("Error fetching jobs", t))
+                .collectList()
+                .doOnNext(jobs -> {
+                    long total = jobs.stream().mapToLong(job -> job.builds().size()).sum();
+                    long failed = jobs.stream().flatMap(job -> job.builds().stream()).filter(build -> "FAILURE".equals(build.result())).count();
+                    log.info("Failed build count: {} of the last {} build(s) of {} job(s)", failed, total, jobs.size());
+                })
+                .then();
     }
 
     private Mono<Void> printFailedJobs() {
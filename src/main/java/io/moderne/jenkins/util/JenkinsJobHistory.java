@@ -0,0 +1,9 @@
+package io.moderne.jenkins.util;
+
+import java.util.List;
+
+/**
+ * A job with its most recent builds, newest first.
+ */
+public record JenkinsJobHistory(String name, String color, List<JenkinsJobBuild> builds) {
+}
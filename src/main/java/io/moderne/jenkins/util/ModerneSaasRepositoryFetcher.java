@@ -1,17 +1,25 @@
 package io.moderne.jenkins.util;
 
-import com.netflix.graphql.dgs.client.MonoGraphQLClient;
-import com.netflix.graphql.dgs.client.WebClientGraphQLClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.lang.Nullable;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@Slf4j
 public class ModerneSaasRepositoryFetcher {
 
     private static final String orgRepositoriesQuery = "" +
@@ -36,36 +44,176 @@ public class ModerneSaasRepositoryFetcher {
             "  }" +
             "}";
 
-    private final WebClientGraphQLClient graphQLClient;
+    private static final String organizationsQuery = "" +
+            "query organizations {" +
+            "  organizations {" +
+            "    name" +
+            "  }" +
+            "}";
+
+    // a relay style connection over the organization's repositories, which the API may not offer, see
+    // fetchRepositoriesPaginated
+    private static final String orgRepositoriesPageQuery = "" +
+            "query orgRepositoriesPage($orgName: String!, $first: Int!, $after: String) {" +
+            "  organizations(name: $orgName) {" +
+            "    repositoriesConnection(first: $first, after: $after) {" +
+            "      pageInfo {" +
+            "        hasNextPage" +
+            "        endCursor" +
+            "      }" +
+            "      edges {" +
+            "        node {" +
+            "          origin" +
+            "          path" +
+            "          branch" +
+            "        }" +
+            "      }" +
+            "    }" +
+            "  }" +
+            "}";
+
+    private final WebClient webClient;
+    private final StreamingJsonDecoder<ModerneSaasRepository> repositoryDecoder =
+            new StreamingJsonDecoder<>(ModerneSaasRepository.class, "data.organizations[].repositories[]", "errors[]");
+    private final StreamingJsonDecoder<Organization> organizationDecoder =
+            new StreamingJsonDecoder<>(Organization.class, "data.organizations[]", "errors[]");
 
     public ModerneSaasRepositoryFetcher() {
-        final int size = 16 * 1024 * 1024;
-        final ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(size))
-                .build();
-        WebClient webClient = WebClient.builder().exchangeStrategies(strategies).baseUrl("https://api.public.moderne.io/graphql").build();
-        graphQLClient = MonoGraphQLClient.createWithWebClient(webClient, headers -> {
-            headers.setBearerAuth("mat-zliFfgWWrh-1ADuP1oX5EWYYKjVAVK3X");
-        });
+        this(client(HttpCacheSettings.fromSystemProperties()));
+    }
+
+    private static WebClient client(@Nullable HttpCacheSettings cache) {
+        WebClient.Builder builder = WebClient.builder()
+                .baseUrl("https://api.public.moderne.io/graphql")
+                .defaultHeaders(headers -> headers.setBearerAuth("mat-zliFfgWWrh-1ADuP1oX5EWYYKjVAVK3X"));
+        if (cache != null) {
+            builder.filter(cache.filter("moderne", ExchangeStrategies.withDefaults(), Map.of("/graphql", Duration.ofHours(1))));
+        }
+        return builder.filter(FetchMetrics.global().exchangeFilter()).build();
+    }
+
+    public ModerneSaasRepositoryFetcher(WebClient webClient) {
+        this.webClient = webClient;
     }
 
     public Mono<List<ModerneSaasRepository>> fetchRepositories(@Nullable String orgName) {
-        return graphQLClient.reactiveExecuteQuery(orgName == null ? allOrgRepositoriesQuery : orgRepositoriesQuery, orgName == null ? new HashMap<>() : Map.of("orgName", orgName)).map(resp -> {
-            List<ModerneSaasRepository> repos = new ArrayList<>();
-            Map<String, Object> data = resp.getData();
-            List<Map<String, Object>> organizations = (List<Map<String, Object>>) data.get("organizations");
-            for (Map<String, Object> organization : organizations) {
-                List<Map<String, Object>> repositories = (List<Map<String, Object>>) organization.get("repositories");
-                for (Map<String, Object> repository : repositories) {
-                    repos.add(new ModerneSaasRepository(
-                            (String) repository.get("origin"),
-                            (String) repository.get("path"),
-                            (String) repository.get("branch")
-                    ));
+        return streamRepositories(orgName).collectList();
+    }
+
+    /**
+     * Posts the query itself rather than going through a GraphQL client, which would read the whole response before
+     * handing out any of it.
+     */
+    public Flux<ModerneSaasRepository> streamRepositories(@Nullable String orgName) {
+        return repositoryDecoder.decode(query(orgName == null ? allOrgRepositoriesQuery : orgRepositoriesQuery,
+                orgName == null ? new HashMap<>() : Map.of("orgName", orgName)));
+    }
+
+    /**
+     * Lists the organizations, then pages through the repositories of up to {@code concurrency} of them at a time,
+     * {@code pageSize} repositories per request. Repositories are emitted as their page arrives, in no particular
+     * order across organizations. If the API rejects the paged query as invalid, organizations are fetched with one
+     * unpaginated request each instead.
+     */
+    public Flux<ModerneSaasRepository> fetchRepositoriesPaginated(int pageSize, int concurrency) {
+        AtomicBoolean unpaginated = new AtomicBoolean();
+        return organizationDecoder.decode(query(organizationsQuery, new HashMap<>()))
+                .flatMap(organization -> unpaginated.get() ?
+                        streamRepositories(organization.name()) :
+                        fetchRepositoriesPage(organization.name(), pageSize, null)
+                                // only ever thrown for the first page, so nothing was emitted yet
+                                .onErrorResume(QueryRejected.class, e -> {
+                                    if (unpaginated.compareAndSet(false, true)) {
+                                        log.warn("Fetching repositories without pagination, the paged query was rejected: {}", e.getMessage());
+                                    }
+                                    return streamRepositories(organization.name());
+                                }), concurrency);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Flux<ModerneSaasRepository> fetchRepositoriesPage(String orgName, int pageSize, @Nullable String after) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("orgName", orgName);
+        variables.put("first", pageSize);
+        variables.put("after", after);
+        return webClient.post()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("query", orgRepositoriesPageQuery, "variables", variables))
+                .attribute(CachingExchangeFilter.CACHE_KEY, orgRepositoriesPageQuery + variables)
+                .retrieve()
+                // GraphQL servers differ in whether they answer an invalid query with a 400 or a 200
+                .onStatus(status -> status == HttpStatus.BAD_REQUEST, response -> response.bodyToMono(Map.class)
+                        .map(body -> error(body.get("errors")))
+                        .defaultIfEmpty(new IllegalStateException("Received 400 without a body")))
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
+                })
+                .retryWhen(FetchMetrics.global().counted(Retry.backoff(10, Duration.ofSeconds(1))
+                        .filter(e -> !(e instanceof QueryRejected)), "graphql"))
+                .flatMapMany(response -> {
+                    if (response.get("errors") != null) {
+                        return Flux.error(error(response.get("errors")));
+                    }
+                    List<ModerneSaasRepository> repos = new ArrayList<>();
+                    Map<String, Object> pageInfo = null;
+                    Map<String, Object> data = (Map<String, Object>) response.get("data");
+                    for (Map<String, Object> organization : (List<Map<String, Object>>) data.get("organizations")) {
+                        Map<String, Object> connection = (Map<String, Object>) organization.get("repositoriesConnection");
+                        for (Map<String, Object> edge : (List<Map<String, Object>>) connection.get("edges")) {
+                            Map<String, Object> repository = (Map<String, Object>) edge.get("node");
+                            repos.add(new ModerneSaasRepository(
+                                    (String) repository.get("origin"),
+                                    (String) repository.get("path"),
+                                    (String) repository.get("branch")
+                            ));
+                        }
+                        pageInfo = (Map<String, Object>) connection.get("pageInfo");
+                    }
+                    Flux<ModerneSaasRepository> page = Flux.fromIterable(repos);
+                    if (pageInfo == null || !Boolean.TRUE.equals(pageInfo.get("hasNextPage"))) {
+                        return page;
+                    }
+                    String endCursor = (String) pageInfo.get("endCursor");
+                    return page.concatWith(Flux.defer(() -> fetchRepositoriesPage(orgName, pageSize, endCursor)));
+                });
+    }
+
+    private Flux<DataBuffer> query(String query, Map<String, Object> variables) {
+        return webClient.post()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("query", query, "variables", variables))
+                .attribute(CachingExchangeFilter.CACHE_KEY, query + variables)
+                .retrieve().bodyToFlux(DataBuffer.class);
+    }
+
+    /**
+     * A GraphQL validation error, as graphql-java classifies it, fails the whole query and won't go away by retrying.
+     */
+    @SuppressWarnings("unchecked")
+    private static IllegalStateException error(@Nullable Object errors) {
+        if (errors instanceof List) {
+            for (Object error : (List<Object>) errors) {
+                if (!(error instanceof Map<?, ?> e)) {
+                    continue;
+                }
+                boolean validation = e.get("extensions") instanceof Map<?, ?> extensions &&
+                                     "ValidationError".equals(extensions.get("classification"));
+                if (validation || String.valueOf(e.get("message")).startsWith("Validation error")) {
+                    return new QueryRejected("Error in response: " + errors);
                 }
             }
-            return repos;
-        });
+        }
+        return new IllegalStateException("Error in response: " + errors);
+    }
+
+    record Organization(String name) {
+    }
+
+    private static class QueryRejected extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        QueryRejected(String message) {
+            super(message);
+        }
     }
 
 }
@@ -0,0 +1,172 @@
+package io.moderne.jenkins.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Moderne SaaS repositories and Jenkins jobs by their {@code org/repo} path, normalized to lower case without host,
+ * {@code .git} or slashes around it. Entries are grouped by organization, so each organization name is stored once
+ * and both single lookups and listing an organization's repositories are map lookups.
+ */
+@Slf4j
+public class RepositoryIndex {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Map<String, Entry>> organizations = new HashMap<>();
+
+    public static RepositoryIndex of(Collection<ModerneSaasRepository> repositories, Collection<JenkinsJobSummary> jobs) {
+        RepositoryIndex index = new RepositoryIndex();
+        repositories.forEach(index::add);
+        jobs.forEach(index::add);
+        return index;
+    }
+
+    /**
+     * Uses the snapshot if it is younger than {@code maxAge}, otherwise fetches the index and snapshots it.
+     */
+    public static Mono<RepositoryIndex> cached(Path snapshot, Duration maxAge, Supplier<Mono<RepositoryIndex>> fetch) {
+        try {
+            if (Files.exists(snapshot) && Files.getLastModifiedTime(snapshot).compareTo(FileTime.from(Instant.now().minus(maxAge))) > 0) {
+                return Mono.fromCallable(() -> load(snapshot));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return fetch.get().doOnNext(index -> index.save(snapshot));
+    }
+
+    public static String normalize(String path) {
+        String normalized = path.toLowerCase(Locale.ROOT).replaceFirst("^[a-z]+://[^/]+/", "");
+        if (normalized.endsWith(".git")) {
+            normalized = normalized.substring(0, normalized.length() - 4);
+        }
+        int start = 0;
+        int end = normalized.length();
+        while (start < end && normalized.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && normalized.charAt(end - 1) == '/') {
+            end--;
+        }
+        return normalized.substring(start, end);
+    }
+
+    /**
+     * Ingest jobs are named after the repository with the first slash replaced by an underscore.
+     */
+    public static String jobPath(String jobName) {
+        return normalize(jobName.replaceFirst("_", "/"));
+    }
+
+    public void add(ModerneSaasRepository repository) {
+        Entry entry = entry(normalize(repository.path()));
+        entry.repository = repository;
+    }
+
+    public void add(JenkinsJobSummary job) {
+        Entry entry = entry(jobPath(job.name()));
+        entry.job = job;
+    }
+
+    private Entry entry(String path) {
+        int slash = path.indexOf('/');
+        String org = slash < 0 ? path : path.substring(0, slash);
+        String repo = slash < 0 ? "" : path.substring(slash + 1);
+        return organizations.computeIfAbsent(org, o -> new HashMap<>()).computeIfAbsent(repo, r -> new Entry());
+    }
+
+    @Nullable
+    private Entry get(String path) {
+        String normalized = normalize(path);
+        int slash = normalized.indexOf('/');
+        Map<String, Entry> repos = organizations.get(slash < 0 ? normalized : normalized.substring(0, slash));
+        return repos == null ? null : repos.get(slash < 0 ? "" : normalized.substring(slash + 1));
+    }
+
+    @Nullable
+    public ModerneSaasRepository repository(String path) {
+        Entry entry = get(path);
+        return entry == null ? null : entry.repository;
+    }
+
+    @Nullable
+    public JenkinsJobSummary job(String path) {
+        Entry entry = get(path);
+        return entry == null ? null : entry.job;
+    }
+
+    public List<ModerneSaasRepository> repositories(String org) {
+        List<ModerneSaasRepository> repositories = new ArrayList<>();
+        organizations.getOrDefault(normalize(org), Map.of()).values().forEach(entry -> {
+            if (entry.repository != null) {
+                repositories.add(entry.repository);
+            }
+        });
+        return repositories;
+    }
+
+    public List<JenkinsJobSummary> jobs(String org) {
+        List<JenkinsJobSummary> jobs = new ArrayList<>();
+        organizations.getOrDefault(normalize(org), Map.of()).values().forEach(entry -> {
+            if (entry.job != null) {
+                jobs.add(entry.job);
+            }
+        });
+        return jobs;
+    }
+
+    public static RepositoryIndex load(Path snapshot) {
+        try {
+            Snapshot loaded = MAPPER.readValue(snapshot.toFile(), Snapshot.class);
+            log.info("Loaded {} repositories and {} jobs from {}", loaded.repositories().size(), loaded.jobs().size(), snapshot);
+            return of(loaded.repositories(), loaded.jobs());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void save(Path snapshot) {
+        List<ModerneSaasRepository> repositories = new ArrayList<>();
+        List<JenkinsJobSummary> jobs = new ArrayList<>();
+        for (Map<String, Entry> repos : organizations.values()) {
+            for (Entry entry : repos.values()) {
+                if (entry.repository != null) {
+                    repositories.add(entry.repository);
+                }
+                if (entry.job != null) {
+                    jobs.add(entry.job);
+                }
+            }
+        }
+        try {
+            Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), new Snapshot(repositories, jobs));
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Entry {
+        @Nullable
+        ModerneSaasRepository repository;
+        @Nullable
+        JenkinsJobSummary job;
+    }
+
+    record Snapshot(List<ModerneSaasRepository> repositories, List<JenkinsJobSummary> jobs) {
+    }
+}
@@ -0,0 +1,181 @@
+package io.moderne.jenkins.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decodes the objects found at one path of a JSON response as the bytes arrive, with Jackson's non-blocking parser,
+ * so only the object being parsed is held in memory instead of the whole body. A path is a dot separated list of
+ * field names where {@code []} stands for every element of an array, like {@code data.organizations[].repositories[]}.
+ */
+public class StreamingJsonDecoder<T> {
+    private static final String ELEMENT = "[]";
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Class<T> type;
+    private final List<String> path;
+    @Nullable
+    private final List<String> errorPath;
+
+    public StreamingJsonDecoder(Class<T> type, String path) {
+        this(type, path, null);
+    }
+
+    /**
+     * @param errorPath where the response reports errors, like GraphQL's {@code errors[]}. The first one found fails
+     *                  the decoded {@link Flux}.
+     */
+    public StreamingJsonDecoder(Class<T> type, String path, @Nullable String errorPath) {
+        this.type = type;
+        this.path = parsePath(path);
+        this.errorPath = errorPath == null ? null : parsePath(errorPath);
+    }
+
+    static List<String> parsePath(String path) {
+        List<String> parsed = new ArrayList<>();
+        for (String segment : path.split("\\.")) {
+            String name = segment;
+            int elements = 0;
+            while (name.endsWith(ELEMENT)) {
+                name = name.substring(0, name.length() - ELEMENT.length());
+                elements++;
+            }
+            if (!name.isEmpty()) {
+                parsed.add(name);
+            }
+            parsed.addAll(Collections.nCopies(elements, ELEMENT));
+        }
+        return parsed;
+    }
+
+    public Flux<T> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            Decoding decoding = new Decoding();
+            return body.concatMapIterable(decoding::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(decoding.end())));
+        });
+    }
+
+    /**
+     * Decodes a response that is requested again when {@code retry} allows it. Objects whose {@code key} was already
+     * emitted before the failure are left out of the repeated response wherever they now appear in it, so a list that
+     * changed in between is neither emitted twice nor cut short. The keys are held until the response is complete.
+     */
+    public Flux<T> decode(Supplier<Flux<DataBuffer>> request, Function<T, ?> key, Retry retry) {
+        return Flux.defer(() -> {
+            Set<Object> emitted = ConcurrentHashMap.newKeySet();
+            return Flux.defer(() -> decode(request.get()))
+                    .filter(decoded -> emitted.add(key.apply(decoded)))
+                    .retryWhen(retry);
+        });
+    }
+
+    private class Decoding {
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        @Nullable
+        private TokenBuffer object;
+        private boolean error;
+        private int depth;
+
+        Decoding() {
+            try {
+                parser = MAPPER.getFactory().createNonBlockingByteArrayParser();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        List<T> feed(DataBuffer buffer) {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            try {
+                feeder.feedInput(bytes, 0, bytes.length);
+                return parse();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<T> end() {
+            feeder.endOfInput();
+            try {
+                List<T> decoded = parse();
+                parser.close();
+                return decoded;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<T> parse() throws IOException {
+            List<T> decoded = new ArrayList<>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (object == null) {
+                    if (token != JsonToken.START_OBJECT) {
+                        continue;
+                    }
+                    List<String> at = currentPath();
+                    if (at.equals(path)) {
+                        error = false;
+                    } else if (at.equals(errorPath)) {
+                        error = true;
+                    } else {
+                        continue;
+                    }
+                    object = new TokenBuffer(parser);
+                    depth = 0;
+                }
+                object.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd() && --depth == 0) {
+                    JsonParser objectParser = object.asParser(MAPPER);
+                    object = null;
+                    if (error) {
+                        throw new IllegalStateException("Error in response: " + MAPPER.readValue(objectParser, Map.class));
+                    }
+                    decoded.add(MAPPER.readValue(objectParser, type));
+                }
+            }
+            return decoded;
+        }
+
+        /**
+         * Where the object that was just started sits in the document.
+         */
+        private List<String> currentPath() {
+            List<String> at = new ArrayList<>();
+            for (JsonStreamContext context = parser.getParsingContext().getParent(); context != null && !context.inRoot(); context = context.getParent()) {
+                at.add(context.inArray() ? ELEMENT : context.getCurrentName());
+            }
+            Collections.reverse(at);
+            return at;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.moderne.jenkins.failjobs;
+
+import io.moderne.jenkins.failjobs.fetch.FetchManifest;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchFailedTest {
+
+    @Test
+    void shouldOnlyKeepLogsOfRunningBuildsThatFail(@TempDir Path dir) throws IOException {
+        Path out = dir.resolve("jenkins-failed");
+        Path running = dir.resolve("jenkins-failed.running");
+        Path manifestFile = dir.resolve("manifest.json");
+        AtomicReference<String> listing = new AtomicReference<>();
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @NotNull
+                @Override
+                public MockResponse dispatch(@NotNull RecordedRequest request) {
+                    String path = request.getPath();
+                    if (path.startsWith("/crumbIssuer/")) {
+                        return new MockResponse().setBody("{\"crumb\":\"c\"}");
+                    } else if (path.equals("/scriptText")) {
+                        return new MockResponse().setBody(listing.get().replace("URL/", server.url("/").toString()));
+                    } else if (path.endsWith("progressiveText?start=0")) {
+                        return new MockResponse().setBody("Started\n").setHeader("X-Text-Size", "8").setHeader("X-More-Data", "true");
+                    } else if (path.endsWith("progressiveText?start=8")) {
+                        return new MockResponse().setBody("FAILURE\n").setHeader("X-Text-Size", "16");
+                    }
+                    return new MockResponse().setResponseCode(404);
+                }
+            });
+
+            listing.set("""
+                    passes\t1\tURL/job/passes/1/consoleText\t8\ttrue
+                    fails\t2\tURL/job/fails/2/consoleText\t8\ttrue
+                    """);
+            run(server, out, manifestFile);
+            assertThat(out).isEmptyDirectory();
+            assertThat(running.resolve("passes.1.txt")).hasContent("Started\n");
+            assertThat(running.resolve("fails.2.txt")).hasContent("Started\n");
+
+            // passes ended in SUCCESS, so only fails is listed
+            listing.set("fails\t2\tURL/job/fails/2/consoleText\t16\tfalse\n");
+            run(server, out, manifestFile);
+        }
+
+        assertThat(running).isEmptyDirectory();
+        assertThat(out.resolve("fails.2.txt")).hasContent("Started\nFAILURE\n");
+        assertThat(manifestFile).content().doesNotContain("passes#1").contains("fails#2");
+    }
+
+    private static void run(MockWebServer server, Path out, Path manifestFile) {
+        new FetchFailed(new OkHttpClient(), out, server.url("/scriptText"), Paths.get("src/jenkins/groovy/find-failed.groovy"),
+                FetchManifest.load(manifestFile), null, true, null, 500).run(new String[0]);
+    }
+}
@@ -0,0 +1,63 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterStoreTest {
+    private static final String EXCEPTION = "java.lang.IllegalStateException: boom\n\tat org.example.Foo.run(Foo.java:12)";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldResumeClusteringFromSavedState() throws IOException {
+        Path stateFile = dir.resolve("clusters.json");
+        Files.writeString(dir.resolve("abc.1.txt"), EXCEPTION);
+        Files.writeString(dir.resolve("abc.2.txt"), EXCEPTION);
+
+        ClusterStore first = ClusterStore.load(stateFile, dir);
+        ExceptionClusterer clusterer = first.restore(20);
+        first.add(clusterer.assign(EXCEPTION), "abc.1.txt");
+        first.save(clusterer);
+
+        ClusterStore second = ClusterStore.load(stateFile, dir);
+        assertThat(second.contains("abc.1.txt")).isTrue();
+        assertThat(second.contains("abc.2.txt")).isFalse();
+
+        ExceptionClusterer restored = second.restore(20);
+        second.add(restored.assign("java.lang.IllegalStateException: boom\n\tat org.example.Foo.run(Foo.java:97)"), "abc.2.txt");
+
+        Map<String, List<Path>> groups = second.groups();
+        assertThat(groups).containsOnlyKeys(EXCEPTION);
+        assertThat(groups.get(EXCEPTION)).containsExactly(dir.resolve("abc.1.txt"), dir.resolve("abc.2.txt"));
+    }
+
+    @Test
+    void shouldDropMembersWhoseLogWasDeleted() throws IOException {
+        Path stateFile = dir.resolve("clusters.json");
+        Files.writeString(dir.resolve("abc.1.txt"), EXCEPTION);
+        Files.writeString(dir.resolve("abc.2.txt"), EXCEPTION);
+
+        ClusterStore first = ClusterStore.load(stateFile, dir);
+        ExceptionClusterer clusterer = first.restore(20);
+        first.add(clusterer.assign(EXCEPTION), "abc.1.txt");
+        first.add(clusterer.assign(EXCEPTION), "abc.2.txt");
+        first.save(clusterer);
+        Files.delete(dir.resolve("abc.1.txt"));
+
+        ClusterStore second = ClusterStore.load(stateFile, dir);
+        assertThat(second.contains("abc.1.txt")).isFalse();
+        assertThat(second.groups().get(EXCEPTION)).containsExactly(dir.resolve("abc.2.txt"));
+
+        Files.delete(dir.resolve("abc.2.txt"));
+        assertThat(ClusterStore.load(stateFile, dir).groups()).isEmpty();
+    }
+}
@@ -0,0 +1,110 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import io.moderne.jenkins.failjobs.scan.LogScanner;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pairs of an exception of the sample console logs and a copy edited until its Sift4 distance is about 15-19% of its
+ * length, just within the default threshold of 20.
+ */
+class ExceptionClustererTest {
+    private static final int THRESHOLD = 20;
+
+    private static final List<String[]> localized = new ArrayList<>();
+    private static final List<String[]> scattered = new ArrayList<>();
+
+    @BeforeAll
+    static void editSampleExceptions() {
+        LogScanner scanner = LogScanner.defaults();
+        Path dir = Paths.get("src/test/resources/input-dir");
+        SplittableRandom random = new SplittableRandom(42);
+        for (String log : new String[]{"abc.1.txt", "abc.2.txt", "sample.755.txt", "sample.758.txt"}) {
+            String exception = ExceptionFingerprint.normalize(scanner.scan(dir.resolve(log)));
+            for (int percent = 15; percent < 20; percent++) {
+                // a different task, module or frames, e.g.
+                localized.add(new String[]{exception, edit(exception, percent, Math.max(3, exception.length() / 100), random)});
+                scattered.add(new String[]{exception, edit(exception, percent, 1, random)});
+            }
+        }
+    }
+
+    @Test
+    void shouldClusterEveryPairWithinThresholdWhileScanningLinearly() {
+        List<String[]> pairs = new ArrayList<>(localized);
+        pairs.addAll(scattered);
+        for (String[] pair : pairs) {
+            ExceptionClusterer clusterer = new ExceptionClusterer(THRESHOLD);
+            String representative = clusterer.assign(pair[0]);
+            assertThat(clusterer.assign(pair[1])).isEqualTo(representative);
+        }
+    }
+
+    /**
+     * Beyond {@link ExceptionClusterer#LINEAR_SCAN_CLUSTERS}, only pairs sharing a bucket are compared, so this is the
+     * recall of the clusterer then.
+     */
+    @Test
+    void shouldShareBucketsForMostLocalizedEditsButFewScatteredOnes() {
+        assertThat(bucketed(localized)).isGreaterThanOrEqualTo(localized.size() * 9 / 10);
+        assertThat(bucketed(scattered)).isLessThan(scattered.size() / 4);
+    }
+
+    private static int bucketed(List<String[]> pairs) {
+        int bucketed = 0;
+        for (String[] pair : pairs) {
+            MinHashIndex<Integer> index = new MinHashIndex<>();
+            index.add(index.signature(pair[0]), 0);
+            if (!index.candidates(index.signature(pair[1])).isEmpty()) {
+                bucketed++;
+            }
+        }
+        return bucketed;
+    }
+
+    /**
+     * Replaces the letters of runs of {@code span} characters, as few runs as it takes for the distance to reach
+     * {@code percent}. Line breaks and punctuation are kept, so the edited copy has the same frames.
+     */
+    private static String edit(String text, int percent, int span, SplittableRandom random) {
+        int[] starts = random.ints(text.length(), 0, text.length()).toArray();
+        double maxDistance = (double) percent * text.length() / 100;
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int runs = (low + high) >>> 1;
+            if (Sift4Similarity.distance(text, replace(text, starts, runs, span), maxDistance) < maxDistance) {
+                low = runs + 1;
+            } else {
+                high = runs;
+            }
+        }
+        String edited = replace(text, starts, low, span);
+        // a run can take the distance past the threshold
+        while (!new Sift4Similarity(THRESHOLD).isSimilar(text, edited)) {
+            edited = replace(text, starts, --low, span);
+        }
+        return edited;
+    }
+
+    private static String replace(String text, int[] starts, int runs, int span) {
+        char[] chars = text.toCharArray();
+        for (int run = 0; run < runs; run++) {
+            for (int i = starts[run]; i < Math.min(chars.length, starts[run] + span); i++) {
+                if (Character.isLetter(text.charAt(i))) {
+                    // no stack trace contains these, so Sift4 can't match them elsewhere
+                    chars[i] = (char) (0x4E00 + (run + i) % 1000);
+                }
+            }
+        }
+        return new String(chars);
+    }
+}
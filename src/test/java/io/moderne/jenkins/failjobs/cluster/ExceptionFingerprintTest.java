@@ -0,0 +1,31 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExceptionFingerprintTest {
+
+    @Test
+    void shouldMaskVolatileParts() {
+        String exception = """
+                java.lang.IllegalStateException: Failed at 2022-06-01T10:15:30.123Z in /tmp/gradle8812/work.bin
+                \tat org.example.Foo$$Lambda$412/0x0000000800c0b440.apply(Unknown Source)
+                \tat org.example.Foo.run(Foo.java:123)""";
+
+        assertThat(ExceptionFingerprint.normalize(exception)).isEqualTo("""
+                java.lang.IllegalStateException: Failed at <timestamp> in <tmp>
+                \tat org.example.Foo$$Lambda.apply(Unknown Source)
+                \tat org.example.Foo.run(Foo.java:#)""");
+    }
+
+    @Test
+    void shouldMatchWhenOnlyVolatilePartsDiffer() {
+        String first = "java.lang.IllegalStateException: object@1a2b3c4d\n\tat org.example.Foo.run(Foo.java:123)\n\tat jdk.internal.reflect.GeneratedMethodAccessor12.invoke(Unknown Source)";
+        String second = "java.lang.IllegalStateException: object@9f8e7d6c\n\tat org.example.Foo.run(Foo.java:97)\n\tat jdk.internal.reflect.GeneratedMethodAccessor40.invoke(Unknown Source)";
+        String different = "java.lang.IllegalArgumentException: object@9f8e7d6c\n\tat org.example.Foo.run(Foo.java:97)";
+
+        assertThat(ExceptionFingerprint.of(first)).isEqualTo(ExceptionFingerprint.of(second));
+        assertThat(ExceptionFingerprint.of(first)).isNotEqualTo(ExceptionFingerprint.of(different));
+    }
+}
@@ -0,0 +1,121 @@
+package io.moderne.jenkins.failjobs.cluster;
+
+import io.moderne.jenkins.failjobs.scan.LogScanner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FailureSimilarityTest {
+    private static final String TRACE = """
+            org.gradle.api.tasks.TaskExecutionException: Execution failed for task ':compileTestJava'.
+            \tat org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter.lambda$executeIfValid$1(ExecuteActionsTaskExecuter.java:147)
+            \tat org.gradle.internal.Try$Failure.ifSuccessfulOrElse(Try.java:282)
+            \tat org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter.executeIfValid(ExecuteActionsTaskExecuter.java:145)
+            \tat org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter.execute(ExecuteActionsTaskExecuter.java:133)
+            \tat org.gradle.api.internal.tasks.execution.CleanupStaleOutputsExecuter.execute(CleanupStaleOutputsExecuter.java:77)
+            \tat org.gradle.api.internal.tasks.execution.FinalizePropertiesTaskExecuter.execute(FinalizePropertiesTaskExecuter.java:46)
+            \tat org.gradle.api.internal.tasks.execution.ResolveTaskExecutionModeExecuter.execute(ResolveTaskExecutionModeExecuter.java:51)
+            \tat org.gradle.api.internal.tasks.execution.SkipTaskWithNoActionsExecuter.execute(SkipTaskWithNoActionsExecuter.java:57)
+            \tat org.gradle.api.internal.tasks.execution.SkipOnlyIfTaskExecuter.execute(SkipOnlyIfTaskExecuter.java:56)
+            \tat org.gradle.api.internal.tasks.execution.CatchExceptionTaskExecuter.execute(CatchExceptionTaskExecuter.java:36)
+            \tat org.gradle.api.internal.tasks.execution.EventFiringTaskExecuter$1.executeTask(EventFiringTaskExecuter.java:77)""";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sift4", "levenshtein", "jaccard"})
+    void shouldAcceptNearDuplicates(String name) {
+        FailureSimilarity similarity = FailureSimilarity.named(name, 20);
+        assertThat(similarity.isSimilar(normalized(TRACE), normalized(TRACE.replace("compileTestJava", "compileSmokeTestJava")))).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sift4", "levenshtein", "jaccard"})
+    void shouldIgnoreLineNumbers(String name) {
+        FailureSimilarity similarity = FailureSimilarity.named(name, 1);
+        assertThat(similarity.isSimilar(normalized(TRACE), normalized(TRACE.replace(":147)", ":151)").replace(":36)", ":39)")))).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sift4", "levenshtein", "jaccard"})
+    void shouldRejectUnrelatedFailures(String name) {
+        FailureSimilarity similarity = FailureSimilarity.named(name, 20);
+        assertThat(similarity.isSimilar(normalized(TRACE), normalized("java.lang.InternalError: Could not create SecurityManager: allow\n\tat sun.misc.Launcher.<init>(Launcher.java:106)"))).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sift4", "levenshtein", "jaccard"})
+    void shouldRejectEmptyException(String name) {
+        assertThat(FailureSimilarity.named(name, 20).isSimilar("", "")).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 10, 20})
+    void shouldMatchUnboundedSift4(int threshold) {
+        String trace = normalized(TRACE);
+        String other = normalized(TRACE.replace("Try$Failure", "Try$Success").replace("compileTestJava", "compileJava"));
+        double full = Sift4Similarity.distance(trace, other, Double.MAX_VALUE);
+        assertThat(new Sift4Similarity(threshold).isSimilar(trace, other)).isEqualTo(full * 100 / other.length() < threshold);
+    }
+
+    /**
+     * Distances computed with {@code info.debatty:java-string-similarity:2.0.0}'s {@code Sift4} with a max offset of
+     * 100, which {@link Sift4Similarity} replaces.
+     */
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', quoteCharacter = '"', value = {
+            "abcdef | badcfe | 3",
+            "Execution failed for task ':compileJava'. | Execution failed for task ':compileTestJava'. | 4",
+            "Could not resolve all files for configuration ':compileClasspath'. | Could not resolve all files for configuration ':runtimeClasspath'. | 4",
+            "java.lang.IllegalStateException: boom | java.lang.IllegalArgumentException: moob | 10",
+            "at a.B.c(B.java:12) at d.E.f(E.java:3) | at d.E.f(E.java:3) at a.B.c(B.java:12) | 14",
+            "\"\" | ERROR | 5",
+            "ERROR | \"\" | 5"
+    })
+    void shouldMatchLibrarySift4(String s1, String s2, int distance) {
+        assertThat(Sift4Similarity.distance(s1, s2, Double.MAX_VALUE)).isEqualTo(distance);
+    }
+
+    /**
+     * Same as {@link #shouldMatchLibrarySift4}, over the exceptions extracted from the sample console logs.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "abc.1.txt, abc.2.txt, 1783",
+            "abc.1.txt, sample.755.txt, 20374",
+            "abc.1.txt, sample.758.txt, 20356",
+            "abc.2.txt, abc.1.txt, 1783",
+            "abc.2.txt, sample.755.txt, 18878",
+            "abc.2.txt, sample.758.txt, 18864",
+            "sample.755.txt, abc.1.txt, 20374",
+            "sample.755.txt, abc.2.txt, 18877",
+            "sample.755.txt, sample.758.txt, 5",
+            "sample.758.txt, abc.1.txt, 20356",
+            "sample.758.txt, abc.2.txt, 18862",
+            "sample.758.txt, sample.755.txt, 5",
+            "sample.755.txt, sample.755.txt, 0"
+    })
+    void shouldMatchLibrarySift4OnSampleLogs(String log1, String log2, int distance) {
+        LogScanner scanner = LogScanner.defaults();
+        Path dir = Paths.get("src/test/resources/input-dir");
+        assertThat(Sift4Similarity.distance(scanner.scan(dir.resolve(log1)), scanner.scan(dir.resolve(log2)), Double.MAX_VALUE))
+                .isEqualTo(distance);
+    }
+
+    @Test
+    void shouldClusterNearDuplicateOneLineErrors() {
+        ExceptionClusterer clusterer = new ExceptionClusterer(20);
+        String compile = "Could not resolve all files for configuration ':compileClasspath'.";
+        assertThat(clusterer.assign(compile)).isEqualTo(compile);
+        assertThat(clusterer.assign("Could not resolve all files for configuration ':runtimeClasspath'.")).isEqualTo(compile);
+        assertThat(clusterer.assign("Execution failed for task ':test'.")).isNotEqualTo(compile);
+    }
+
+    private static String normalized(String exception) {
+        return ExceptionFingerprint.normalize(exception);
+    }
+}
@@ -0,0 +1,124 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsoleLogDownloaderTest {
+    private final MockWebServer server = new MockWebServer();
+
+    @BeforeEach
+    void setup() throws IOException {
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldHoldHostSlotUntilBodyIsProcessed() throws InterruptedException {
+        Concurrency processing = new Concurrency();
+        try (ConsoleLogDownloader<Integer> downloader = new ConsoleLogDownloader<>(new OkHttpClient(), settings(2))) {
+            for (int i = 0; i < 8; i++) {
+                server.enqueue(new MockResponse().setBody("log " + i));
+                downloader.submit(i, request(i), (body, headers) -> processing.during(() -> sleep(50)));
+            }
+            DownloadReport<Integer> report = downloader.await(Duration.ofSeconds(10));
+
+            assertThat(report.succeeded()).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7);
+            assertThat(processing.max).hasValue(2);
+        }
+    }
+
+    @Test
+    void shouldRetryOverloadAndServerErrors() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("log"));
+        try (ConsoleLogDownloader<Integer> downloader = new ConsoleLogDownloader<>(new OkHttpClient(), settings(1))) {
+            downloader.submit(1, request(1), (body, headers) -> assertThat(body.string()).isEqualTo("log"));
+            DownloadReport<Integer> report = downloader.await(Duration.ofSeconds(10));
+
+            assertThat(report.succeeded()).containsExactly(1);
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void shouldNotRetryClientErrors() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        try (ConsoleLogDownloader<Integer> downloader = new ConsoleLogDownloader<>(new OkHttpClient(), settings(1))) {
+            downloader.submit(1, request(1), (body, headers) -> {
+            });
+            DownloadReport<Integer> report = downloader.await(Duration.ofSeconds(10));
+
+            assertThat(report.failed()).singleElement().satisfies(failure -> assertThat(failure.reason()).endsWith("Received 404"));
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldReleaseHostSlotOnceWhenProcessingFails() throws InterruptedException {
+        Concurrency processing = new Concurrency();
+        try (ConsoleLogDownloader<Integer> downloader = new ConsoleLogDownloader<>(new OkHttpClient(), settings(1))) {
+            for (int i = 0; i < 4; i++) {
+                server.enqueue(new MockResponse().setBody("log " + i));
+                boolean fail = i % 2 == 0;
+                downloader.submit(i, request(i), (body, headers) -> processing.during(() -> {
+                    sleep(50);
+                    if (fail) {
+                        throw new IllegalStateException("unreadable");
+                    }
+                }));
+            }
+            DownloadReport<Integer> report = downloader.await(Duration.ofSeconds(10));
+
+            assertThat(report.succeeded()).containsExactlyInAnyOrder(1, 3);
+            assertThat(report.failed()).hasSize(2);
+            // a slot released twice would let a second download through
+            assertThat(processing.max).hasValue(1);
+        }
+    }
+
+    private Request request(int i) {
+        return new Request.Builder().url(server.url("/job/abc/" + i + "/consoleText")).build();
+    }
+
+    private static DownloadSettings settings(int perHost) {
+        return new DownloadSettings(perHost, 16, 4, 3, Duration.ofMillis(10), perHost, Duration.ofSeconds(10));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Concurrency {
+        private final AtomicInteger current = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+
+        void during(Runnable work) {
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                work.run();
+            } finally {
+                current.decrementAndGet();
+            }
+        }
+    }
+}
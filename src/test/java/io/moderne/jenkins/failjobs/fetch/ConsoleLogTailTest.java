@@ -0,0 +1,83 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsoleLogTailTest {
+    private static final String LOG = "Started\njava.lang.IllegalStateException: boom\n\tat a.B.c(B.java:1)\n\tat a.B.d(B.java:2)\nFinished: FAILURE\n";
+
+    private final MockWebServer server = new MockWebServer();
+    private final OkHttpClient client = new OkHttpClient();
+    private final List<String> starts = new ArrayList<>();
+
+    @BeforeEach
+    void setup() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                String start = Objects.requireNonNull(request.getRequestUrl()).queryParameter("start");
+                starts.add(start);
+                return new MockResponse().setBody(LOG.substring(Integer.parseInt(Objects.requireNonNull(start))));
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldWidenWindowWhileItStartsInStackTrace() throws IOException {
+        assertThat(tail(40, 1024)).isEqualTo(LOG);
+        assertThat(starts).containsExactly("63", "23", "0");
+    }
+
+    @Test
+    void shouldStopWideningAtMaxWindow() throws IOException {
+        assertThat(tail(40, 80)).isEqualTo("\tat a.B.c(B.java:1)\n\tat a.B.d(B.java:2)\nFinished: FAILURE\n");
+        assertThat(starts).containsExactly("63", "23");
+    }
+
+    @Test
+    void shouldDropLineCutOffAtWindowStart() throws IOException {
+        assertThat(tail(30, 1024)).isEqualTo("Finished: FAILURE\n");
+        assertThat(starts).containsExactly("73");
+    }
+
+    @Test
+    void shouldKeepFirstLineWhenWindowStartsOnLineBoundary() throws IOException {
+        String exception = LOG.substring(LOG.indexOf("java.lang"));
+        assertThat(tail(exception.length(), exception.length())).isEqualTo(exception);
+        assertThat(starts).containsExactly(Integer.toString(LOG.indexOf("java.lang") - 1));
+    }
+
+    private String tail(long window, long maxWindow) throws IOException {
+        ConsoleLogTail tail = new ConsoleLogTail(client, window, maxWindow);
+        Request consoleText = new Request.Builder().url(server.url("/job/abc/1/consoleText")).build();
+        StringBuilder fetched = new StringBuilder();
+        try (Response response = client.newCall(tail.request(consoleText, LOG.length())).execute()) {
+            tail.then(consoleText, LOG.length(), (body, headers) -> fetched.append(body.string()))
+                    .process(Objects.requireNonNull(response.body()), response.headers());
+        }
+        return fetched.toString();
+    }
+}
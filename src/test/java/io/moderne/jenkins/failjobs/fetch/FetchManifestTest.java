@@ -0,0 +1,91 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchManifestTest {
+
+    @Test
+    void shouldResumeFromStoredOffset(@TempDir Path dir) throws IOException {
+        Path manifestFile = dir.resolve("manifest.json");
+        Path consoleLog = dir.resolve("abc.1.txt");
+
+        FetchManifest first = FetchManifest.load(manifestFile);
+        FetchManifest.Entry from = first.resumeFrom("abc", "1", consoleLog);
+        assertThat(from).isEqualTo(FetchManifest.Entry.NONE);
+        first.appendTo("abc", "1", consoleLog, from)
+                .process(ResponseBody.create("Started\n", null), Headers.of("X-Text-Size", "120", "X-More-Data", "true"));
+        first.save();
+
+        FetchManifest second = FetchManifest.load(manifestFile);
+        from = second.resumeFrom("abc", "1", consoleLog);
+        assertThat(from).isEqualTo(new FetchManifest.Entry(120, 8, false));
+        assertThat(FetchManifest.progressiveTextUrl("https://jenkins/job/abc/1/consoleText", from))
+                .hasToString("https://jenkins/job/abc/1/logText/progressiveText?start=120");
+
+        // a cut off attempt leaves a partial chunk that the retry replaces
+        Files.writeString(consoleLog, "FIN", StandardOpenOption.APPEND);
+        second.appendTo("abc", "1", consoleLog, from)
+                .process(ResponseBody.create("FINISHED\n", null), Headers.of("X-Text-Size", "200"));
+
+        assertThat(consoleLog).hasContent("Started\nFINISHED\n");
+        assertThat(second.resumeFrom("abc", "1", consoleLog)).isEqualTo(new FetchManifest.Entry(200, 17, true));
+    }
+
+    @Test
+    void shouldFollowConsoleLogOfRunningBuild(@TempDir Path dir) throws IOException, InterruptedException {
+        Path manifestFile = dir.resolve("manifest.json");
+        Path consoleLog = dir.resolve("abc.1.txt");
+        OkHttpClient client = new OkHttpClient();
+        try (MockWebServer server = new MockWebServer()) {
+            // offsets count the console notes that progressiveText leaves out
+            server.enqueue(new MockResponse().setBody("Started\n").setHeader("X-Text-Size", "120").setHeader("X-More-Data", "true"));
+            server.enqueue(new MockResponse().setBody("Compiling\n").setHeader("X-Text-Size", "250").setHeader("X-More-Data", "true"));
+            server.enqueue(new MockResponse().setBody("FAILURE\n").setHeader("X-Text-Size", "300"));
+            String consoleTextUrl = server.url("/job/abc/1/consoleText").toString();
+
+            // one fetch per run while the build is going
+            for (int run = 0; run < 3; run++) {
+                FetchManifest manifest = FetchManifest.load(manifestFile);
+                FetchManifest.Entry from = manifest.resumeFrom("abc", "1", consoleLog);
+                try (Response response = client.newCall(new Request.Builder().url(FetchManifest.progressiveTextUrl(consoleTextUrl, from)).build()).execute()) {
+                    manifest.appendTo("abc", "1", consoleLog, from).process(response.body(), response.headers());
+                }
+                manifest.save();
+            }
+
+            assertThat(server.takeRequest().getPath()).isEqualTo("/job/abc/1/logText/progressiveText?start=0");
+            assertThat(server.takeRequest().getPath()).isEqualTo("/job/abc/1/logText/progressiveText?start=120");
+            assertThat(server.takeRequest().getPath()).isEqualTo("/job/abc/1/logText/progressiveText?start=250");
+        }
+
+        assertThat(consoleLog).hasContent("Started\nCompiling\nFAILURE\n");
+        assertThat(FetchManifest.load(manifestFile).resumeFrom("abc", "1", consoleLog))
+                .isEqualTo(new FetchManifest.Entry(300, 26, true));
+    }
+
+    @Test
+    void shouldStartOverWhenConsoleLogIsMissing(@TempDir Path dir) throws IOException {
+        FetchManifest manifest = FetchManifest.load(dir.resolve("manifest.json"));
+        Path consoleLog = dir.resolve("abc.1.txt");
+        manifest.appendTo("abc", "1", consoleLog, FetchManifest.Entry.NONE)
+                .process(ResponseBody.create("done\n", null), Headers.of("X-Text-Size", "5"));
+        Files.delete(consoleLog);
+
+        assertThat(manifest.resumeFrom("abc", "1", consoleLog)).isEqualTo(FetchManifest.Entry.NONE);
+    }
+}
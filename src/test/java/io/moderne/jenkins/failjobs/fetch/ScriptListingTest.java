@@ -0,0 +1,46 @@
+package io.moderne.jenkins.failjobs.fetch;
+
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScriptListingTest {
+    private static final String SCRIPT = "def pageSize = null\ndef after = null\nprintln 'builds'";
+
+    @Test
+    void shouldListPageAfterPage() throws IOException, InterruptedException {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("#next\tYWJj\nabc\t1\n"));
+            server.enqueue(new MockResponse().setBody("def\t7\n"));
+            ScriptListing listing = new ScriptListing(new OkHttpClient(), server.url("/scriptText"),
+                    Headers.of("Jenkins-Crumb", "crumb"), Paths.get("find-failed.groovy"), SCRIPT, 2);
+
+            List<String> lines = new ArrayList<>();
+            assertThat(listing.forEachLine(lines::add)).isEqualTo(2);
+
+            assertThat(lines).containsExactly("abc\t1", "def\t7");
+            RecordedRequest first = server.takeRequest();
+            assertThat(first.getHeader("Jenkins-Crumb")).isEqualTo("crumb");
+            assertThat(script(first))
+                    .contains("def pageSize = '2'")
+                    .contains("def after = null");
+            assertThat(script(server.takeRequest())).contains("def after = 'YWJj'");
+        }
+    }
+
+    private static String script(RecordedRequest request) {
+        return URLDecoder.decode(request.getBody().readUtf8(), StandardCharsets.UTF_8);
+    }
+}
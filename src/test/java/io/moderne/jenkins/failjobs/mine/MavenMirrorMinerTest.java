@@ -0,0 +1,35 @@
+package io.moderne.jenkins.failjobs.mine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.entry;
+
+class MavenMirrorMinerTest {
+    private static final JobSummary BUILD = new JobSummary("ingest-org_repo", "1", "maven", "failure", "https://jenkins/job/ingest-org_repo/1/consoleText");
+
+    @Test
+    void shouldCollectBlockedRepositories() {
+        MavenMirrorMiner miner = new MavenMirrorMiner();
+        String line = "[ERROR] Failed to collect dependencies: Could not transfer artifact from/to maven-default-http-blocker (http://0.0.0.0/): " +
+                      "Blocked mirror for repositories: [apache.snapshots (http://repository.apache.org/snapshots, default, snapshots), " +
+                      "java.net (http://download.java.net/maven/2/, default, releases+snapshots)]";
+        assertThat(miner.patterns()).anyMatch(p -> p.matches(line));
+
+        miner.mine(BUILD, line);
+        miner.mine(BUILD, line);
+
+        assertThat(miner.mirrors()).containsOnly(
+                entry("apache.snapshots", "http://repository.apache.org/snapshots/"),
+                entry("java.net", "http://download.java.net/maven/2/"));
+    }
+
+    @Test
+    void shouldRejectConflictingMirrors() {
+        MavenMirrorMiner miner = new MavenMirrorMiner();
+        miner.mine(BUILD, "maven-default-http-blocker Blocked mirror for repositories: [a (http://one/, default, releases)]");
+        assertThatIllegalStateException().isThrownBy(() ->
+                miner.mine(BUILD, "maven-default-http-blocker Blocked mirror for repositories: [a (http://two/, default, releases)]"));
+    }
+}
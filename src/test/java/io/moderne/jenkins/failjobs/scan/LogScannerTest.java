@@ -0,0 +1,114 @@
+package io.moderne.jenkins.failjobs.scan;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogScannerTest {
+
+    /**
+     * The line filter {@code CategorizeFailuresHtml} used before {@link LogScanner}, verbatim.
+     */
+    private static final Predicate<String> LINE_FILTER = l -> l.contains("Exception:") ||
+            l.contains("Error:") ||
+            l.contains("ERROR") ||
+            l.contains("An exception occurred") ||
+            l.startsWith("Extension with name") ||
+            l.startsWith("Could not find method mavenLocal()") ||
+            l.contains("Could not find com.fasterxml.jackson.datatype:jackson-datatype-jsr310:RELEASE") ||
+            l.contains("Could not resolve all files for configuration") ||
+            l.contains("Publication only contains dependencies and/or constraints without a version") ||
+            l.contains("Could not find method pluginManagement()") ||
+            l.contains("No signature of method: org.gradle.api.internal.tasks.RealizableTaskCollection.configureEach() is applicable for argument types") ||
+            l.contains("Publishing is not able to resolve a dependency on a project with multiple publications that have different coordinates.") ||
+            l.startsWith("\tat");
+
+    @Test
+    void shouldMatchLikeLineFilter(@TempDir Path dir) throws IOException {
+        // every pattern, at and after the start of a line, and lines that only nearly match
+        Path patterns = dir.resolve("patterns.txt");
+        Files.writeString(patterns, String.join("\n",
+                "java.lang.IllegalStateException: boom",
+                "Caused by: java.lang.NoClassDefFoundError: org/example/Foo",
+                "[ERROR] Failed to execute goal",
+                "An exception occurred applying plugin request [id: 'org.example']",
+                "Extension with name 'publishing' does not exist.",
+                "> Extension with name 'publishing' does not exist.",
+                "Could not find method mavenLocal() for arguments [] on object",
+                "  Could not find method mavenLocal() for arguments [] on object",
+                "   > Could not find com.fasterxml.jackson.datatype:jackson-datatype-jsr310:RELEASE.",
+                "   > Could not resolve all files for configuration ':compileClasspath'.",
+                "Publication only contains dependencies and/or constraints without a version. You need to add",
+                "> Could not find method pluginManagement() for arguments",
+                "> No signature of method: org.gradle.api.internal.tasks.RealizableTaskCollection.configureEach() is applicable for argument types: (Closure)",
+                "Publishing is not able to resolve a dependency on a project with multiple publications that have different coordinates.",
+                "\tat org.example.Foo.run(Foo.java:12)",
+                "  \tat org.example.Foo.run(Foo.java:12)",
+                "java.lang.IllegalStateException boom",
+                "error: lower case",
+                "Error without colon",
+                "BUILD SUCCESSFUL"));
+
+        LogScanner scanner = LogScanner.defaults();
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(Paths.get("src/test/resources/input-dir"))) {
+            logs = Stream.concat(files, Stream.of(patterns)).collect(Collectors.toList());
+        }
+        for (Path f : logs) {
+            try (Stream<String> lines = Files.lines(f)) {
+                String expected = lines.filter(LINE_FILTER).collect(Collectors.joining("\n"));
+                assertThat(scanner.scan(f)).as(f.toString()).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void shouldOnlyMatchPrefixPatternsAtLineStart(@TempDir Path dir) throws IOException {
+        LogScanner scanner = new LogScanner(List.of(
+                LinePattern.parse("prefix:\\tat"),
+                LinePattern.parse("contains:Caused by")));
+        Path log = dir.resolve("console.txt");
+        Files.writeString(log, "\tat a.B.c(B.java:1)\r\nwhat\tat\n  Caused by: x\nlast\tat no\n\tat end");
+
+        assertThat(scanner.scan(log)).isEqualTo("\tat a.B.c(B.java:1)\n  Caused by: x\n\tat end");
+    }
+
+    @Test
+    void shouldScanStreamLikeFile() throws IOException {
+        LogScanner scanner = LogScanner.defaults();
+        try (Stream<Path> files = Files.list(Paths.get("src/test/resources/input-dir"))) {
+            for (Path f : files.collect(Collectors.toList())) {
+                StringJoiner streamed = new StringJoiner("\n");
+                // hand out a few bytes per read, like a slow HTTP response
+                try (InputStream in = new FilterInputStream(Files.newInputStream(f)) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return super.read(b, off, Math.min(len, 7));
+                    }
+                }) {
+                    scanner.scan(in, streamed::add);
+                }
+                assertThat(streamed.toString()).as(f.toString()).isEqualTo(scanner.scan(f));
+            }
+        }
+    }
+
+    @Test
+    void shouldScanEmptyLog(@TempDir Path dir) throws IOException {
+        Path log = Files.createFile(dir.resolve("empty.txt"));
+        assertThat(LogScanner.defaults().scan(log)).isEmpty();
+    }
+}
@@ -0,0 +1,40 @@
+package io.moderne.jenkins.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AimdExchangeFilterTest {
+    private final AimdLimiter limiter = new AimdLimiter("jenkins", 1, 4, Duration.ofMinutes(1));
+    private final AimdExchangeFilter filter = new AimdExchangeFilter(limiter);
+    private final ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("https://jenkins/job/ingest/api/json")).build();
+
+    @Test
+    void shouldHoldPermitUntilBodyIsRead() {
+        ClientResponse response = filter.filter(request, r -> Mono.just(ClientResponse.create(HttpStatus.OK).body("{}").build())).block();
+        assertThat(limiter.inFlight()).isEqualTo(1);
+
+        assertThat(response.bodyToMono(String.class).block()).isEqualTo("{}");
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldTakeServerErrorsForOverload() {
+        filter.filter(request, r -> Mono.just(ClientResponse.create(HttpStatus.OK).body("{}").build()))
+                .flatMap(ClientResponse::releaseBody).block();
+        assertThat(limiter.limit()).isEqualTo(2);
+
+        filter.filter(request, r -> Mono.just(ClientResponse.create(HttpStatus.BAD_GATEWAY).build()))
+                .flatMap(ClientResponse::releaseBody).block();
+        assertThat(limiter.limit()).isEqualTo(1);
+        assertThat(limiter.inFlight()).isZero();
+    }
+}
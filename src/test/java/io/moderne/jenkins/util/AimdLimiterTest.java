@@ -0,0 +1,54 @@
+package io.moderne.jenkins.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AimdLimiterTest {
+
+    @Test
+    void shouldGrowWhileSaturatedAndHealthy() {
+        AimdLimiter limiter = new AimdLimiter("jenkins", 1, 4, Duration.ofSeconds(1));
+        for (int i = 0; i < 20; i++) {
+            while (limiter.tryAcquire()) {
+                // saturate the current limit
+            }
+            limiter.onSuccess(Duration.ofMillis(10).toNanos());
+            limiter.release();
+        }
+        assertThat(limiter.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldHalveOnOverloadOncePerCooldown() {
+        AimdLimiter limiter = new AimdLimiter("jenkins", 1, 16, Duration.ofMinutes(1));
+        for (int i = 0; i < 100 && limiter.limit() < 8; i++) {
+            while (limiter.tryAcquire()) {
+                // saturate the current limit
+            }
+            limiter.onSuccess(Duration.ofMillis(10).toNanos());
+            limiter.release();
+        }
+        assertThat(limiter.limit()).isEqualTo(8);
+
+        limiter.onOverload("503");
+        limiter.onOverload("503");
+        assertThat(limiter.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldGrantWaitersOnRelease() {
+        AimdLimiter limiter = new AimdLimiter("jenkins", 1, 1, Duration.ofSeconds(1));
+        assertThat(limiter.tryAcquire()).isTrue();
+        AtomicBoolean granted = new AtomicBoolean();
+        limiter.acquire(() -> granted.set(true));
+        assertThat(granted).isFalse();
+
+        limiter.release();
+        assertThat(granted).isTrue();
+        assertThat(limiter.inFlight()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,70 @@
+package io.moderne.jenkins.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class BuildHistoryStoreTest {
+    private static final long MAY_1 = LocalDate.of(2024, 5, 1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldOnlyStoreCompletedBuildsOnce() {
+        try (BuildHistoryStore store = BuildHistoryStore.open(dir, 2)) {
+            assertThat(store.append(new JenkinsJobBuild("openrewrite_rewrite", 1, MAY_1, "SUCCESS", 1000))).isTrue();
+            assertThat(store.append(new JenkinsJobBuild("openrewrite_rewrite", 1, MAY_1, "SUCCESS", 1000))).isFalse();
+            assertThat(store.append(new JenkinsJobBuild("openrewrite_rewrite", 2, MAY_1, null, 0))).isFalse();
+            assertThat(store.contains("openrewrite_rewrite", 2)).isFalse();
+        }
+    }
+
+    @Test
+    void shouldLookUpBuildsByNumber() {
+        try (BuildHistoryStore store = BuildHistoryStore.open(dir, 2)) {
+            for (int number : new int[]{1000, 3, 7}) {
+                store.append(new JenkinsJobBuild("openrewrite_rewrite", number, MAY_1 + number, "SUCCESS", number));
+            }
+            store.append(new JenkinsJobBuild("jenkinsci_git-plugin", 5, MAY_1, "FAILURE", 1));
+        }
+
+        try (BuildHistoryStore store = BuildHistoryStore.open(dir, 2)) {
+            assertThat(store.build("openrewrite_rewrite", 7)).isEqualTo(new JenkinsJobBuild("openrewrite_rewrite", 7, MAY_1 + 7, "SUCCESS", 7));
+            assertThat(store.build("openrewrite_rewrite", 1000)).isNotNull();
+            assertThat(store.build("openrewrite_rewrite", 5)).isNull();
+            assertThat(store.build("openrewrite_rewrite", 1001)).isNull();
+            assertThat(store.build("jenkinsci_git-plugin", 5)).isNotNull();
+        }
+    }
+
+    @Test
+    void shouldQueryAcrossSegmentsAfterReopening() {
+        try (BuildHistoryStore store = BuildHistoryStore.open(dir, 2)) {
+            store.append(new JenkinsJobBuild("openrewrite_rewrite", 1, MAY_1, "SUCCESS", 1000));
+            store.append(new JenkinsJobBuild("jenkinsci_git-plugin", 7, MAY_1 + HOUR, "FAILURE", 2000));
+            store.append(new JenkinsJobBuild("openrewrite_rewrite", 2, MAY_1 + 25 * HOUR, "FAILURE", 3000));
+        }
+
+        try (BuildHistoryStore store = BuildHistoryStore.open(dir, 2)) {
+            assertThat(store.size()).isEqualTo(3);
+            assertThat(store.builds("openrewrite_rewrite")).containsExactly(
+                    new JenkinsJobBuild("openrewrite_rewrite", 2, MAY_1 + 25 * HOUR, "FAILURE", 3000),
+                    new JenkinsJobBuild("openrewrite_rewrite", 1, MAY_1, "SUCCESS", 1000));
+            assertThat(store.build("jenkinsci_git-plugin", 7)).isNotNull();
+
+            store.append(new JenkinsJobBuild("jenkinsci_git-plugin", 8, MAY_1 + 26 * HOUR, "SUCCESS", 1000));
+            assertThat(store.daily(MAY_1, MAY_1 + 48 * HOUR, ZoneOffset.UTC)).containsExactly(
+                    entry(LocalDate.of(2024, 5, 1), new DailyBuildStats.Day(2, 1)),
+                    entry(LocalDate.of(2024, 5, 2), new DailyBuildStats.Day(2, 1)));
+            assertThat(store.daily(MAY_1 + 24 * HOUR, MAY_1 + 48 * HOUR, ZoneOffset.UTC)).containsOnlyKeys(LocalDate.of(2024, 5, 2));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.moderne.jenkins.util;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingExchangeFilterTest {
+    private static final Map<String, Duration> TTLS = Map.of(
+            "/fresh", Duration.ofHours(1),
+            "/stale", Duration.ofMillis(1),
+            "/job/.*", Duration.ofHours(1));
+
+    private final MockWebServer server = new MockWebServer();
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldServeFreshResponsesFromCache() {
+        server.enqueue(new MockResponse().setBody("jobs"));
+        WebClient client = client(false);
+
+        assertThat(get(client, "/fresh")).isEqualTo("jobs");
+        assertThat(get(client, "/fresh")).isEqualTo("jobs");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRevalidateStaleResponses() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("jobs").setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        WebClient client = client(false);
+
+        assertThat(get(client, "/stale")).isEqualTo("jobs");
+        Thread.sleep(5);
+        assertThat(get(client, "/stale")).isEqualTo("jobs");
+        server.takeRequest();
+        assertThat(server.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+    }
+
+    @Test
+    void shouldOnlyServeFromCacheWhenOffline() {
+        server.enqueue(new MockResponse().setBody("jobs"));
+        assertThat(get(client(false), "/stale")).isEqualTo("jobs");
+
+        WebClient offline = client(true);
+        assertThat(get(offline, "/stale")).isEqualTo("jobs");
+        assertThatThrownBy(() -> get(offline, "/fresh")).hasMessageContaining("Offline and not cached");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedResponses() {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("12345678"));
+        }
+        WebClient client = client(20, false);
+
+        get(client, "/job/a");
+        get(client, "/job/b");
+        // a is now used more recently than b
+        get(client, "/job/a");
+        get(client, "/job/c");
+
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(get(client(20, true), "/job/a")).isEqualTo("12345678");
+        assertThat(get(client(20, true), "/job/c")).isEqualTo("12345678");
+        assertThatThrownBy(() -> get(client(20, true), "/job/b")).hasMessageContaining("Offline and not cached");
+    }
+
+    private WebClient client(boolean offline) {
+        return client(1024 * 1024, offline);
+    }
+
+    private WebClient client(long maxBytes, boolean offline) {
+        HttpCacheSettings settings = new HttpCacheSettings(dir, maxBytes, offline);
+        return WebClient.builder()
+                .baseUrl(server.url("/").toString())
+                .filter(settings.filter("test", ExchangeStrategies.withDefaults(), TTLS))
+                .build();
+    }
+
+    private static String get(WebClient client, String path) {
+        return client.get().uri(path).retrieve().bodyToMono(String.class).block();
+    }
+}
@@ -0,0 +1,44 @@
+package io.moderne.jenkins.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class DailyBuildStatsTest {
+
+    @Test
+    void shouldRecountDaysFromWatermark(@TempDir Path dir) {
+        Path file = dir.resolve("stats.csv");
+
+        DailyBuildStats first = DailyBuildStats.load(file);
+        assertThat(first.watermark()).isEqualTo(DailyBuildStats.BEGINNING);
+        first.merge("""
+                date, total, failed
+                2024-05-01, 10, 2
+                2024-05-02, 4, 0
+                # watermark 2024-05-02
+                """);
+        first.save(file);
+
+        DailyBuildStats second = DailyBuildStats.load(file);
+        assertThat(second.watermark()).isEqualTo(LocalDate.of(2024, 5, 2));
+        // the build still running on the 2nd has failed since
+        second.merge("""
+                date, total, failed
+                2024-05-02, 5, 1
+                2024-05-03, 7, 3
+                # watermark 2024-05-04
+                """);
+
+        assertThat(second.watermark()).isEqualTo(LocalDate.of(2024, 5, 4));
+        assertThat(second.days()).containsExactly(
+                entry(LocalDate.of(2024, 5, 1), new DailyBuildStats.Day(10, 2)),
+                entry(LocalDate.of(2024, 5, 2), new DailyBuildStats.Day(5, 1)),
+                entry(LocalDate.of(2024, 5, 3), new DailyBuildStats.Day(7, 3)));
+    }
+}
@@ -0,0 +1,63 @@
+package io.moderne.jenkins.util;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchMetricsTest {
+    private final MockWebServer server = new MockWebServer();
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    @BeforeEach
+    void setup() throws IOException {
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldClassifyEndpoints() {
+        assertThat(FetchMetrics.endpoint("/job/ingest/api/json")).isEqualTo("job list");
+        assertThat(FetchMetrics.endpoint("/job/ingest/job/openrewrite_rewrite/api/json")).isEqualTo("job");
+        assertThat(FetchMetrics.endpoint("/job/ingest/job/openrewrite_rewrite/42/api/json")).isEqualTo("build");
+        assertThat(FetchMetrics.endpoint("/job/ingest/job/openrewrite_rewrite/42/consoleText")).isEqualTo("consoleText");
+        assertThat(FetchMetrics.endpoint("/scriptText")).isEqualTo("scriptText");
+        assertThat(FetchMetrics.endpoint("/graphql")).isEqualTo("graphql");
+    }
+
+    @Test
+    void shouldRecordOkHttpRequests() throws IOException {
+        server.enqueue(new MockResponse().setBody("Started by timer"));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addNetworkInterceptor(new FetchMetrics(registry).okHttpInterceptor())
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            try (Response response = client.newCall(new Request.Builder().url(server.url("/job/ingest/job/a/1/consoleText")).build()).execute()) {
+                response.body().string();
+            }
+        }
+
+        String scrape = registry.scrape();
+        assertThat(scrape)
+                .contains("fetch_requests_seconds_count{endpoint=\"consoleText\",status=\"200\",} 1.0")
+                .contains("fetch_requests_seconds_count{endpoint=\"consoleText\",status=\"503\",} 1.0")
+                .contains("fetch_response_bytes_sum{endpoint=\"consoleText\",} 16.0")
+                .contains("fetch_requests_active{endpoint=\"consoleText\",} 0.0");
+    }
+}
@@ -0,0 +1,100 @@
+package io.moderne.jenkins.util;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingExchangeFilterTest {
+    private final MockWebServer server = new MockWebServer();
+
+    @BeforeEach
+    void setup() throws IOException {
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldTakeHedgeWhenRequestIsSlow() {
+        WebClient client = client(1.0);
+        for (int i = 0; i < 32; i++) {
+            server.enqueue(new MockResponse().setBody("fast"));
+            assertThat(get(client, "/job/a/api/json")).isEqualTo("fast");
+        }
+        server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(3, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("hedge"));
+
+        long start = System.nanoTime();
+        assertThat(get(client, "/job/a/api/json")).isEqualTo("hedge");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(server.getRequestCount()).isEqualTo(34);
+    }
+
+    @Test
+    void shouldNotHedgeBeyondBudget() {
+        WebClient client = client(0.01);
+        for (int i = 0; i < 32; i++) {
+            server.enqueue(new MockResponse().setBody("fast"));
+            get(client, "/job/a/api/json");
+        }
+        server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(200, TimeUnit.MILLISECONDS));
+
+        assertThat(get(client, "/job/a/api/json")).isEqualTo("slow");
+        assertThat(server.getRequestCount()).isEqualTo(33);
+    }
+
+    @Test
+    void shouldNotHedgeWhileWaitingToBeSent() {
+        AtomicReference<Duration> queued = new AtomicReference<>(Duration.ZERO);
+        AtomicInteger exchanges = new AtomicInteger();
+        HedgingExchangeFilter filter = new HedgingExchangeFilter(Pattern.compile("/job/[^/]+/api/json"), 0.95, 1.0);
+        WebClient client = WebClient.builder()
+                .baseUrl(server.url("/").toString())
+                .filter(filter)
+                // only the next request is held back, as if it waited for a permit
+                .filter((request, next) -> {
+                    exchanges.incrementAndGet();
+                    return Mono.delay(queued.getAndSet(Duration.ZERO)).then(next.exchange(request));
+                })
+                .filter(filter.onTheWire())
+                .build();
+        for (int i = 0; i < 32; i++) {
+            server.enqueue(new MockResponse().setBody("fast").setHeadersDelay(100, TimeUnit.MILLISECONDS));
+            get(client, "/job/a/api/json");
+        }
+        server.enqueue(new MockResponse().setBody("queued"));
+        queued.set(Duration.ofMillis(500));
+
+        assertThat(get(client, "/job/a/api/json")).isEqualTo("queued");
+        assertThat(exchanges).hasValue(33);
+    }
+
+    private WebClient client(double budget) {
+        HedgingExchangeFilter filter = new HedgingExchangeFilter(Pattern.compile("/job/[^/]+/api/json"), 0.95, budget);
+        return WebClient.builder()
+                .baseUrl(server.url("/").toString())
+                .filter(filter)
+                .filter(filter.onTheWire())
+                .build();
+    }
+
+    private static String get(WebClient client, String path) {
+        return client.get().uri(path).retrieve().bodyToMono(String.class).block();
+    }
+}
@@ -0,0 +1,107 @@
+package io.moderne.jenkins.util;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JenkinsJobFetcherTest {
+    private static final Pattern RANGE = Pattern.compile(".*\\]\\{(\\d+),(\\d+)}");
+
+    private final MockWebServer server = new MockWebServer();
+    private final Queue<String> paths = new ConcurrentLinkedQueue<>();
+    private List<String> jobs = List.of();
+
+    @BeforeEach
+    void setup() throws IOException {
+        // stands in for the job list, serving the range of jobs the tree query asks for
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                paths.add(request.getPath());
+                Matcher range = RANGE.matcher(request.getRequestUrl().queryParameter("tree"));
+                if (!range.matches()) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                int from = Math.min(Integer.parseInt(range.group(1)), jobs.size());
+                int to = Math.min(Integer.parseInt(range.group(2)), jobs.size());
+                StringBuilder page = new StringBuilder();
+                for (String job : jobs.subList(from, to)) {
+                    if (page.length() > 0) {
+                        page.append(", ");
+                    }
+                    page.append("{\"name\": \"").append(job).append("\", \"color\": \"red\", \"builds\": [")
+                            // still running its post-build steps
+                            .append("{\"number\": 2, \"timestamp\": 1714521600000, \"result\": \"FAILURE\", \"duration\": 1000, \"building\": true}, ")
+                            .append("{\"number\": 1, \"timestamp\": 1714435200000, \"result\": \"SUCCESS\", \"duration\": 2000, \"building\": false}]}");
+                }
+                return new MockResponse().setHeader("Content-Type", "application/json")
+                        .setBody("{\"jobs\": [" + page + "]}");
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldStopAtShortPage() {
+        jobs = List.of("openrewrite_rewrite", "openrewrite_rewrite-spring", "jenkinsci_jenkins");
+
+        List<JenkinsJobHistory> histories = fetcher().fetchJenkinsJobHistories(2, 2).collectList().block();
+
+        assertThat(histories).extracting(JenkinsJobHistory::name).containsExactlyElementsOf(jobs);
+        assertThat(histories.get(2).builds()).containsExactly(
+                new JenkinsJobBuild("jenkinsci_jenkins", 2, 1714521600000L, "FAILURE", 1000),
+                new JenkinsJobBuild("jenkinsci_jenkins", 1, 1714435200000L, "SUCCESS", 2000));
+        assertThat(paths).containsExactly(
+                "/job/ingest/api/json?tree=jobs%5Bname%2Ccolor%2Cbuilds%5Bnumber%2Ctimestamp%2Cresult%2Cduration%2Cbuilding%5D%7B0%2C2%7D%5D%7B0%2C2%7D",
+                "/job/ingest/api/json?tree=jobs%5Bname%2Ccolor%2Cbuilds%5Bnumber%2Ctimestamp%2Cresult%2Cduration%2Cbuilding%5D%7B0%2C2%7D%5D%7B2%2C4%7D");
+    }
+
+    @Test
+    void shouldAskForOneMorePageWhenLastPageIsFull() {
+        jobs = List.of("openrewrite_rewrite", "openrewrite_rewrite-spring", "jenkinsci_jenkins", "jenkinsci_git-plugin");
+
+        List<JenkinsJobHistory> histories = fetcher().fetchJenkinsJobHistories(2, 2).collectList().block();
+
+        assertThat(histories).extracting(JenkinsJobHistory::name).containsExactlyElementsOf(jobs);
+        // the third page comes back empty
+        assertThat(paths).hasSize(3).last().asString().endsWith("%7B4%2C6%7D");
+    }
+
+    @Test
+    void shouldOnlyStoreBuildsThatAreDone(@TempDir Path dir) {
+        jobs = List.of("openrewrite_rewrite");
+
+        try (BuildHistoryStore history = BuildHistoryStore.open(dir)) {
+            new JenkinsJobFetcher(server.url("/").toString(), history).fetchJenkinsJobHistories(2, 2).blockLast();
+
+            assertThat(history.contains("openrewrite_rewrite", 1)).isTrue();
+            assertThat(history.contains("openrewrite_rewrite", 2)).isFalse();
+        }
+    }
+
+    private JenkinsJobFetcher fetcher() {
+        return new JenkinsJobFetcher(server.url("/").toString(), null);
+    }
+}
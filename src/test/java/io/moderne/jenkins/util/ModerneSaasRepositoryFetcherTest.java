@@ -0,0 +1,109 @@
+package io.moderne.jenkins.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModerneSaasRepositoryFetcherTest {
+    private final MockWebServer server = new MockWebServer();
+    private final Queue<String> pages = new ConcurrentLinkedQueue<>();
+    private volatile boolean connectionUndefined;
+
+    @BeforeEach
+    void setup() throws IOException {
+        // stands in for the GraphQL API, openrewrite having two pages of repositories and jenkinsci one
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                JsonNode body;
+                try {
+                    body = new ObjectMapper().readTree(request.getBody().readUtf8());
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(400);
+                }
+                String query = body.get("query").asText();
+                JsonNode variables = body.get("variables");
+                if (!query.contains("repositories")) {
+                    return json("{\"data\": {\"organizations\": [{\"name\": \"openrewrite\"}, {\"name\": \"jenkinsci\"}]}}");
+                } else if (!query.contains("repositoriesConnection")) {
+                    pages.add(variables.get("orgName").asText());
+                    return json("{\"data\": {\"organizations\": [{\"repositories\": [" +
+                                "{\"origin\": \"github.com\", \"path\": \"" + variables.get("orgName").asText() + "/repo\", \"branch\": \"main\"}]}]}}");
+                } else if (connectionUndefined) {
+                    return json("{\"errors\": [{\"message\": \"Validation error (FieldUndefined@[organizations/repositoriesConnection]) : " +
+                                "Field 'repositoriesConnection' in type 'Organization' is undefined\", " +
+                                "\"extensions\": {\"classification\": \"ValidationError\"}}], \"data\": null}");
+                }
+                String page = variables.get("orgName").asText() + "@" + variables.get("after").asText("");
+                pages.add(page);
+                return json(switch (page) {
+                    case "openrewrite@" -> page("\"c1\"", "openrewrite/rewrite", "openrewrite/rewrite-spring");
+                    case "openrewrite@c1" -> page(null, "openrewrite/rewrite-maven-plugin");
+                    case "jenkinsci@" -> page(null, "jenkinsci/jenkins");
+                    default -> throw new IllegalArgumentException(page);
+                });
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldFollowCursorsOfEveryOrganization() {
+        ModerneSaasRepositoryFetcher fetcher = new ModerneSaasRepositoryFetcher(WebClient.create(server.url("/graphql").toString()));
+
+        List<ModerneSaasRepository> repositories = fetcher.fetchRepositoriesPaginated(2, 2).collectList().block();
+
+        assertThat(repositories).extracting(ModerneSaasRepository::path).containsExactlyInAnyOrder(
+                "openrewrite/rewrite", "openrewrite/rewrite-spring", "openrewrite/rewrite-maven-plugin", "jenkinsci/jenkins");
+        assertThat(pages).containsExactlyInAnyOrder("openrewrite@", "openrewrite@c1", "jenkinsci@");
+    }
+
+    @Test
+    void shouldFallBackToUnpaginatedQueryWhenConnectionIsUndefined() {
+        connectionUndefined = true;
+        ModerneSaasRepositoryFetcher fetcher = new ModerneSaasRepositoryFetcher(WebClient.create(server.url("/graphql").toString()));
+
+        List<ModerneSaasRepository> repositories = fetcher.fetchRepositoriesPaginated(2, 1).collectList().block();
+
+        assertThat(repositories).extracting(ModerneSaasRepository::path).containsExactly("openrewrite/repo", "jenkinsci/repo");
+        assertThat(pages).containsExactly("openrewrite", "jenkinsci");
+    }
+
+    private static String page(String endCursor, String... paths) {
+        StringBuilder edges = new StringBuilder();
+        for (String path : paths) {
+            if (edges.length() > 0) {
+                edges.append(", ");
+            }
+            edges.append("{\"node\": {\"origin\": \"github.com\", \"path\": \"").append(path).append("\", \"branch\": \"main\"}}");
+        }
+        return "{\"data\": {\"organizations\": [{\"repositoriesConnection\": {" +
+                "\"pageInfo\": {\"hasNextPage\": " + (endCursor != null) + ", \"endCursor\": " + endCursor + "}, " +
+                "\"edges\": [" + edges + "]}}]}}";
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+}
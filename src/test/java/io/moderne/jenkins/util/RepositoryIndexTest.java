@@ -0,0 +1,40 @@
+package io.moderne.jenkins.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepositoryIndexTest {
+    private final RepositoryIndex index = RepositoryIndex.of(
+            List.of(new ModerneSaasRepository("github.com", "openrewrite/rewrite", "main"),
+                    new ModerneSaasRepository("github.com", "openrewrite/rewrite-spring", "main"),
+                    new ModerneSaasRepository("github.com", "jenkinsci/jenkins", "master")),
+            List.of(new JenkinsJobSummary("openrewrite_rewrite", "blue"),
+                    new JenkinsJobSummary("jenkinsci_git-plugin", "red")));
+
+    @Test
+    void shouldLookUpByNormalizedPath() {
+        assertThat(index.repository("https://github.com/OpenRewrite/rewrite.git")).isNotNull();
+        assertThat(index.job("openrewrite/rewrite")).isEqualTo(new JenkinsJobSummary("openrewrite_rewrite", "blue"));
+        assertThat(index.repository("jenkinsci/git-plugin")).isNull();
+        assertThat(index.job("jenkinsci/git-plugin")).isNotNull();
+        assertThat(index.repositories("openrewrite")).extracting(ModerneSaasRepository::path)
+                .containsExactlyInAnyOrder("openrewrite/rewrite", "openrewrite/rewrite-spring");
+        assertThat(index.jobs("jenkinsci")).extracting(JenkinsJobSummary::name).containsExactly("jenkinsci_git-plugin");
+    }
+
+    @Test
+    void shouldRestoreSnapshot(@TempDir Path dir) {
+        Path snapshot = dir.resolve("index.json");
+        index.save(snapshot);
+
+        RepositoryIndex loaded = RepositoryIndex.load(snapshot);
+        assertThat(loaded.repository("jenkinsci/jenkins")).isEqualTo(new ModerneSaasRepository("github.com", "jenkinsci/jenkins", "master"));
+        assertThat(loaded.job("openrewrite/rewrite")).isNotNull();
+        assertThat(loaded.repositories("openrewrite")).hasSize(2);
+    }
+}
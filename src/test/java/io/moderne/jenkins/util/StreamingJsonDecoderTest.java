@@ -0,0 +1,68 @@
+package io.moderne.jenkins.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingJsonDecoderTest {
+
+    @Test
+    void shouldDecodeObjectsSplitAcrossBuffers() {
+        String json = """
+                {"data": {"organizations": [
+                  {"repositories": [{"origin": "github.com", "path": "openrewrite/rewrite", "branch": "main"}]},
+                  {"repositories": [{"origin": "github.com", "path": "jenkinsci/jenkins", "branch": "master", "extra": {"path": "ignored"}}]}
+                ]}}
+                """;
+        StreamingJsonDecoder<ModerneSaasRepository> decoder = new StreamingJsonDecoder<>(ModerneSaasRepository.class, "data.organizations[].repositories[]", "errors[]");
+
+        assertThat(decoder.decode(chunks(json, 3)).collectList().block()).containsExactly(
+                new ModerneSaasRepository("github.com", "openrewrite/rewrite", "main"),
+                new ModerneSaasRepository("github.com", "jenkinsci/jenkins", "master"));
+    }
+
+    @Test
+    void shouldFailOnErrors() {
+        StreamingJsonDecoder<ModerneSaasRepository> decoder = new StreamingJsonDecoder<>(ModerneSaasRepository.class, "data.organizations[].repositories[]", "errors[]");
+
+        assertThatThrownBy(() -> decoder.decode(chunks("{\"errors\": [{\"message\": \"Unauthorized\"}], \"data\": null}", 5)).blockLast())
+                .hasMessageContaining("Unauthorized");
+    }
+
+    @Test
+    void shouldNotEmitObjectsTwiceWhenRetried() {
+        StreamingJsonDecoder<JenkinsJobSummary> decoder = new StreamingJsonDecoder<>(JenkinsJobSummary.class, "jobs[]");
+        AtomicInteger requests = new AtomicInteger();
+
+        List<JenkinsJobSummary> jobs = decoder.decode(() -> requests.incrementAndGet() == 1
+                        ? chunks("{\"jobs\": [{\"name\": \"a\", \"color\": \"blue\"}, {\"name\": \"b\", \"color\": \"red\"}, {\"na", 7)
+                                .concatWith(Flux.error(new IOException("Connection reset")))
+                        // a job was added at the start of the list in the meantime
+                        : chunks("{\"jobs\": [{\"name\": \"0\", \"color\": \"blue\"}, {\"name\": \"a\", \"color\": \"blue\"}, " +
+                                 "{\"name\": \"b\", \"color\": \"red\"}, {\"name\": \"c\", \"color\": \"blue\"}]}", 7),
+                JenkinsJobSummary::name, Retry.max(1)).collectList().block();
+
+        assertThat(jobs).extracting(JenkinsJobSummary::name).containsExactly("a", "b", "0", "c");
+    }
+
+    private static Flux<DataBuffer> chunks(String json, int size) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += size) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + size))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+}